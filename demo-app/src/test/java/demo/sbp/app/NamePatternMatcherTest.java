@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2019-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package demo.sbp.app;
+
+import org.junit.Test;
+import org.laxture.sbp.internal.NamePatternMatcher;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * {@link NamePatternMatcher} should match the same names as globs of
+ * `sbp-plugin.plugin-first-classes` and `sbp-plugin.plugin-only-resources`
+ * matched by {@link String#matches} before.
+ *
+ * @author <a href="https://github.com/hank-cp">Hank CP</a>
+ */
+public class NamePatternMatcherTest {
+
+    private static final List<String> GLOBS = Arrays.asList(
+        "demo.sbp.shelf.Shelf",
+        "demo.sbp.shelf.*",
+        "demo.sbp.**.model.*",
+        "demo.sbp.author.Author?",
+        "*.Dto",
+        "META-INF/spring?.factories",
+        "plugin_only",
+        "static/**",
+        "*",
+        "demo.sbp.*.service.*Service*",
+        "a?b*c");
+
+    private static final List<String> NAMES = Arrays.asList(
+        "",
+        "demo",
+        "demo.sbp.shelf.Shelf",
+        "demo.sbp.shelf.Shelf2",
+        "demo.sbp.shelf.",
+        "demo.sbp.shelf",
+        "demo.sbp.shelfX.Shelf",
+        "demo.sbp.model.Book",
+        "demo.sbp.author.model.Author",
+        "demo.sbp.author.model",
+        "demo.sbp.author.Author",
+        "demo.sbp.author.Authors",
+        "demo.sbp.author.Authorss",
+        "demoXsbp.author.Author",
+        "demo.sbp.author.service.AuthorService",
+        "demo.sbp.author.service.AuthorServiceImpl",
+        "demo.sbp.author.service.Author",
+        "x.Dto",
+        ".Dto",
+        "x.Dtos",
+        "META-INF/spring.factories",
+        "META-INF/springs.factories",
+        "META-INF/springss.factories",
+        "plugin_only",
+        "plugin_only/foo",
+        "static/index.html",
+        "static",
+        "abc",
+        "ac",
+        "axbc",
+        "axxbc",
+        "abxxc",
+        "abcx");
+
+    @Test
+    public void testSameAsStringMatches() {
+        for (String glob : GLOBS) {
+            NamePatternMatcher matcher = new NamePatternMatcher(Collections.singletonList(glob));
+            for (String name : NAMES) {
+                assertThat(glob + " ~ " + name, matcher.matches(name), equalTo(legacyMatches(glob, name)));
+                // memorized decision
+                assertThat(glob + " ~ " + name, matcher.matches(name), equalTo(legacyMatches(glob, name)));
+            }
+        }
+    }
+
+    @Test
+    public void testMixedPatterns() {
+        // without the catch-all `*`
+        List<String> globs = new ArrayList<>(GLOBS);
+        globs.remove("*");
+        NamePatternMatcher matcher = new NamePatternMatcher(globs);
+        for (String name : NAMES) {
+            boolean expected = globs.stream().anyMatch(glob -> legacyMatches(glob, name));
+            assertThat(name, matcher.matches(name), equalTo(expected));
+        }
+    }
+
+    @Test
+    public void testLiteralsAndWildcards() {
+        NamePatternMatcher matcher = new NamePatternMatcher(Arrays.asList(
+            "demo.sbp.Foo", "demo.sbp.bar.*", "demo.**.Baz", "demo.sbp.Qu?x"));
+        assertThat(matcher.matches("demo.sbp.Foo"), is(true));
+        assertThat(matcher.matches("demo.sbp.Foo2"), is(false));
+        assertThat(matcher.matches("demo.sbp.bar.Bar"), is(true));
+        assertThat(matcher.matches("demo.sbp.bar.deep.Bar"), is(true));
+        assertThat(matcher.matches("demo.sbp.barX"), is(false));
+        assertThat(matcher.matches("demo.a.b.Baz"), is(true));
+        assertThat(matcher.matches("demo.a.b.Baz2"), is(false));
+        assertThat(matcher.matches("demo.sbp.Quux"), is(true));
+        assertThat(matcher.matches("demo.sbp.Qux"), is(true));
+        assertThat(matcher.matches("demo.sbp.Quuux"), is(false));
+        assertThat(new NamePatternMatcher(Collections.emptyList()).matches("demo.sbp.Foo"), is(false));
+    }
+
+    @Test
+    public void testMemoEviction() {
+        NamePatternMatcher matcher = new NamePatternMatcher(Arrays.asList("demo.sbp.*", "demo.Foo"));
+        for (int i = 0; i < 20_000; i++) {
+            assertThat(matcher.matches("demo.sbp.Class" + i), is(true));
+            assertThat(matcher.matches("other.Class" + i), is(false));
+        }
+        assertThat(matcher.getMemoSize(), lessThanOrEqualTo(8192));
+        // decisions are still memorized after evicted
+        assertThat(matcher.matches("demo.Foo"), is(true));
+        assertThat(matcher.getMemoSize(), greaterThan(0));
+    }
+
+    /**
+     * Glob matching before {@link NamePatternMatcher} was introduced.
+     */
+    private static boolean legacyMatches(String glob, String name) {
+        String regex = glob.replaceAll(".", "[$0]")
+            .replace("[*]", ".*?")
+            .replace("[?]", ".?");
+        return name.matches(regex);
+    }
+}
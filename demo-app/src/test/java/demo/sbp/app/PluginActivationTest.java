@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2019-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package demo.sbp.app;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.laxture.sbp.spring.boot.SbpPluginStateChangedEvent;
+import org.pf4j.PluginState;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.support.GenericApplicationContext;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static demo.sbp.app.PluginStartingTest.sleep;
+import static demo.sbp.app.StubPluginManager.plugin;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Start lazy or hibernated plugins by requests and extension lookups.
+ *
+ * @author <a href="https://github.com/hank-cp">Hank CP</a>
+ */
+public class PluginActivationTest {
+
+    private StubPluginManager pluginManager;
+    private final AtomicInteger startCount = new AtomicInteger();
+    private final AtomicBoolean broken = new AtomicBoolean();
+
+    @Before
+    public void setUp() throws Exception {
+        pluginManager = new StubPluginManager();
+        pluginManager.addPlugin("a", plugin(() -> {
+            startCount.incrementAndGet();
+            sleep(100);
+            if (broken.get()) throw new IllegalStateException("broken");
+        }));
+    }
+
+    @Test
+    public void testConcurrentActivations() {
+        assertThat(pluginManager.isActivatable("a"), is(true));
+        List<CompletableFuture<PluginState>> futures = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            futures.add(CompletableFuture.supplyAsync(() -> pluginManager.activatePlugin("a").join()));
+        }
+        futures.forEach(future -> assertThat(future.join(), equalTo(PluginState.STARTED)));
+        assertThat(startCount.get(), equalTo(1));
+    }
+
+    @Test
+    public void testCancelledActivation() {
+        CompletableFuture<PluginState> cancelled = pluginManager.activatePlugin("a");
+        CompletableFuture<PluginState> waiting = pluginManager.activatePlugin("a");
+        // e.g. request timed out or disconnected
+        cancelled.cancel(true);
+
+        assertThat(waiting.join(), equalTo(PluginState.STARTED));
+        assertThat(pluginManager.activatePlugin("a").join(), equalTo(PluginState.STARTED));
+        assertThat(startCount.get(), equalTo(1));
+    }
+
+    @Test
+    public void testStoppedByAdmin() {
+        pluginManager.startPlugin("a");
+        pluginManager.stopPlugin("a");
+
+        assertThat(pluginManager.isActivatable("a"), is(false));
+        assertThat(pluginManager.activatePlugin("a").join(), equalTo(PluginState.STOPPED));
+        assertThat(startCount.get(), equalTo(1));
+    }
+
+    @Test
+    public void testHibernated() {
+        pluginManager.startPlugin("a");
+        pluginManager.hibernatePlugin("a");
+
+        assertThat(pluginManager.isActivatable("a"), is(true));
+        assertThat(pluginManager.activatePlugin("a").join(), equalTo(PluginState.STARTED));
+        assertThat(pluginManager.isHibernated("a"), is(false));
+        assertThat(startCount.get(), equalTo(2));
+    }
+
+    @Test
+    public void testFailedActivationBackoff() {
+        pluginManager.setActivationRetryBackoff(Duration.ofMillis(500));
+        broken.set(true);
+
+        assertThat(pluginManager.activatePlugin("a").join(), equalTo(PluginState.FAILED));
+        assertThat(pluginManager.getActivationRetryDelay("a"), greaterThan(0L));
+        assertThat(pluginManager.isActivatable("a"), is(false));
+        // not retried within backoff
+        assertThat(pluginManager.activatePlugin("a").join(), equalTo(PluginState.FAILED));
+        assertThat(startCount.get(), equalTo(1));
+
+        sleep(500);
+        broken.set(false);
+        assertThat(pluginManager.getActivationRetryDelay("a"), equalTo(0L));
+        assertThat(pluginManager.isActivatable("a"), is(true));
+        assertThat(pluginManager.activatePlugin("a").join(), equalTo(PluginState.STARTED));
+        assertThat(startCount.get(), equalTo(2));
+    }
+
+    @Test
+    public void testFailedOtherwise() {
+        broken.set(true);
+        assertThat(pluginManager.startPlugin("a"), equalTo(PluginState.FAILED));
+
+        // failed by admin or on app startup is not retried by requests
+        assertThat(pluginManager.getActivationRetryDelay("a"), equalTo(0L));
+        assertThat(pluginManager.isActivatable("a"), is(false));
+        assertThat(pluginManager.activatePlugin("a").join(), equalTo(PluginState.FAILED));
+        assertThat(startCount.get(), equalTo(1));
+    }
+
+    @Test
+    public void testHibernatedOnStateChanged() {
+        pluginManager.startPlugin("a");
+        List<Boolean> activatable = new ArrayList<>();
+        ((GenericApplicationContext) pluginManager.getMainApplicationContext()).addApplicationListener(
+            (ApplicationListener<SbpPluginStateChangedEvent>) event ->
+                activatable.add(pluginManager.isActivatable("a")));
+
+        pluginManager.hibernatePlugin("a");
+        assertThat(activatable, contains(true));
+        assertThat(pluginManager.isHibernated("a"), is(true));
+    }
+
+    @Test
+    public void testHibernatedDependencyWokenUp() {
+        pluginManager.startPlugin("a");
+        pluginManager.hibernatePlugin("a");
+        pluginManager.addPlugin("b", plugin(() -> {}), "a");
+
+        // a is started by pf4j along with b
+        assertThat(pluginManager.startPlugin("b"), equalTo(PluginState.STARTED));
+        assertThat(pluginManager.getPlugin("a").getPluginState(), equalTo(PluginState.STARTED));
+        assertThat(pluginManager.isHibernated("a"), is(false));
+        assertThat(pluginManager.getHibernatedPluginIds(), empty());
+    }
+
+    @Test(timeout = 5000)
+    public void testWakeInPluginStarting() {
+        pluginManager.startPlugin("a");
+        pluginManager.hibernatePlugin("a");
+        pluginManager.addPlugin("b", plugin(() -> pluginManager.activatePlugin("a").join()));
+
+        // activator thread would wait for loading lock held by starting of b
+        assertThat(pluginManager.startPlugin("b"), equalTo(PluginState.STARTED));
+        assertThat(pluginManager.getPlugin("a").getPluginState(), equalTo(PluginState.STARTED));
+        assertThat(pluginManager.isHibernated("a"), is(false));
+    }
+
+    @Test(timeout = 5000)
+    public void testWakeInParallelStarting() {
+        pluginManager.setPluginStartingThreads(2);
+        pluginManager.startPlugin("a");
+        pluginManager.hibernatePlugin("a");
+        pluginManager.addPlugin("b", plugin(() -> pluginManager.activatePlugin("a").join()));
+        pluginManager.addPlugin("c", plugin(() -> {}));
+
+        pluginManager.startPlugins();
+        assertThat(pluginManager.getPlugin("a").getPluginState(), equalTo(PluginState.STARTED));
+        assertThat(pluginManager.getPlugin("b").getPluginState(), equalTo(PluginState.STARTED));
+    }
+
+    @Test(timeout = 5000)
+    public void testWakeInStateChangedListener() {
+        pluginManager.startPlugin("a");
+        pluginManager.hibernatePlugin("a");
+        pluginManager.addPlugin("b", plugin(() -> {}));
+        AtomicBoolean waking = new AtomicBoolean(true);
+        ((GenericApplicationContext) pluginManager.getMainApplicationContext()).addApplicationListener(
+            (ApplicationListener<SbpPluginStateChangedEvent>) event -> {
+                if (waking.getAndSet(false)) pluginManager.activatePlugin("a").join();
+            });
+
+        pluginManager.startPlugin("b");
+        assertThat(waking.get(), is(false));
+        assertThat(pluginManager.getPlugin("a").getPluginState(), equalTo(PluginState.STARTED));
+    }
+}
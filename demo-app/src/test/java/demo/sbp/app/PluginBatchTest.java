@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2019-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package demo.sbp.app;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.laxture.sbp.spring.boot.SbpPluginStateChangedEvent;
+import org.pf4j.PluginState;
+import org.pf4j.PluginWrapper;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.support.GenericApplicationContext;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static demo.sbp.app.StubPluginManager.plugin;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Stop, reload and start plugins in one batch by {@code SpringBootPluginManager.applyChanges()}.
+ *
+ * @author <a href="https://github.com/hank-cp">Hank CP</a>
+ */
+public class PluginBatchTest {
+
+    private StubPluginManager pluginManager;
+    private final List<String> events = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicInteger stateChangedCount = new AtomicInteger();
+    private final AtomicInteger refreshCount = new AtomicInteger();
+
+    @Before
+    public void setUp() throws Exception {
+        pluginManager = new StubPluginManager();
+        for (String pluginId : Arrays.asList("a", "b", "c")) {
+            pluginManager.addPlugin(pluginId, plugin(() -> {
+                events.add("start " + pluginId);
+                // e.g. rebuilding EntityManagerFactory, shared by all plugins in batch
+                pluginManager.deferRefresh("refresh", refreshCount::incrementAndGet);
+            }));
+        }
+        pluginManager.addPlugin("broken", plugin(() -> {
+            throw new IllegalStateException("broken");
+        }));
+        pluginManager.startPlugin("a");
+        ((GenericApplicationContext) pluginManager.getMainApplicationContext()).addApplicationListener(
+            (ApplicationListener<SbpPluginStateChangedEvent>) event -> stateChangedCount.incrementAndGet());
+        events.clear();
+        refreshCount.set(0);
+    }
+
+    @Test
+    public void testOrder() {
+        Map<String, PluginState> states = pluginManager.applyChanges(
+            Arrays.asList("b", "c"), Collections.singletonList("a"), null);
+
+        assertThat(states.keySet(), contains("a", "b", "c"));
+        assertThat(states.get("a"), equalTo(PluginState.STOPPED));
+        assertThat(states.get("b"), equalTo(PluginState.STARTED));
+        assertThat(states.get("c"), equalTo(PluginState.STARTED));
+        assertThat(events, contains("start b", "start c"));
+    }
+
+    @Test
+    public void testRefreshOncePerBatch() {
+        pluginManager.applyChanges(Arrays.asList("b", "c"), Collections.singletonList("a"), null);
+
+        assertThat(refreshCount.get(), equalTo(1));
+        assertThat(stateChangedCount.get(), equalTo(1));
+    }
+
+    @Test
+    public void testPartialFailure() {
+        Map<String, PluginState> states = pluginManager.applyChanges(
+            Arrays.asList("broken", "b"), null, Collections.singletonList("c"));
+
+        // failed ones don't stop the batch
+        assertThat(states.get("broken"), equalTo(PluginState.FAILED));
+        assertThat(states.get("b"), equalTo(PluginState.STARTED));
+        // stub plugin couldn't be loaded again from its path
+        assertThat(states, hasEntry("c", null));
+        assertThat(pluginManager.getPlugin("c"), nullValue());
+        assertThat(stateChangedCount.get(), equalTo(1));
+    }
+
+    @Test
+    public void testUnknownPlugin() {
+        try {
+            pluginManager.applyChanges(Arrays.asList("b", "unknown"), Collections.singletonList("a"), null);
+            throw new AssertionError("unknown plugin should be rejected");
+        } catch (IllegalArgumentException ignored) {}
+
+        // nothing is applied
+        PluginWrapper plugin = pluginManager.getPlugin("a");
+        assertThat(plugin.getPluginState(), equalTo(PluginState.STARTED));
+        assertThat(pluginManager.getPlugin("b").getPluginState(), equalTo(PluginState.RESOLVED));
+        assertThat(stateChangedCount.get(), equalTo(0));
+    }
+}
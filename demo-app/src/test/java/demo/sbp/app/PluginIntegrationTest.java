@@ -48,6 +48,7 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.*;
 import static org.hamcrest.collection.IsCollectionWithSize.hasSize;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 /**
@@ -143,6 +144,28 @@ public class PluginIntegrationTest {
                         containsInAnyOrder("author", "shelf", "admin")));
     }
 
+    @Test
+    public void testPluginBatch() throws Exception {
+        mvc.perform(post("/sbp/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"stop\": [\"demo-plugin-shelf\"], \"start\": [\"demo-plugin-shelf\"]}"))
+                .andExpect(status().isOk())
+                // stopped first, then started
+                .andExpect(jsonPath("$['demo-plugin-shelf']", equalTo("STARTED")));
+
+        mvc.perform(get("/shelf/list")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].author.name", equalTo("George Orwell")));
+
+        mvc.perform(get("/plugin/extensions/list")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[*]",
+                        containsInAnyOrder("author", "shelf", "admin")));
+    }
+
     @Test
     public void loadClassFromParentFirst() throws Exception {
         // class should be loaded from app and parent plugin first
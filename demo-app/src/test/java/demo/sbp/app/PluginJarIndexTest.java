@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2019-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package demo.sbp.app;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.laxture.sbp.internal.PluginJarIndex;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * {@link PluginJarIndex} should find the same entries as {@link JarFile#getEntry}.
+ *
+ * @author <a href="https://github.com/hank-cp">Hank CP</a>
+ */
+public class PluginJarIndexTest {
+
+    private File jarFile;
+
+    @Before
+    public void setUp() throws IOException {
+        jarFile = Files.createTempFile("sbp-plugin-", ".jar").toFile();
+        try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jarFile.toPath()))) {
+            out.putNextEntry(new JarEntry("static/"));
+            out.closeEntry();
+            out.putNextEntry(new JarEntry("static/index.html"));
+            out.write("<body/>".getBytes(StandardCharsets.UTF_8));
+            out.closeEntry();
+            out.putNextEntry(new JarEntry("demo/sbp/Foo.class"));
+            out.closeEntry();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        new File(jarFile.getPath() + PluginJarIndex.INDEX_FILE_SUFFIX).delete();
+        jarFile.delete();
+    }
+
+    @Test
+    public void testSameAsJarFile() throws IOException {
+        for (boolean persist : new boolean[] {false, true, true}) {
+            PluginJarIndex index = PluginJarIndex.of(jarFile, persist);
+            try (JarFile jar = new JarFile(jarFile)) {
+                for (String name : new String[] {"static", "static/", "static/index.html",
+                        "static/index", "demo", "demo/sbp/Foo.class", "demo/sbp/Bar.class", ""}) {
+                    assertThat(name, index.contains(name), equalTo(jar.getEntry(name) != null));
+                }
+            }
+            assertThat(index.containsClass("demo.sbp.Foo"), is(true));
+            assertThat(index.containsClass("demo.sbp.Bar"), is(false));
+        }
+    }
+}
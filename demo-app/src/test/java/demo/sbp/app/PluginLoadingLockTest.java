@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2019-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package demo.sbp.app;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.laxture.sbp.util.BeanUtil;
+import org.pf4j.PluginState;
+import org.springframework.boot.autoconfigure.web.servlet.PluginLoadingLockServletFilter;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static demo.sbp.app.PluginStartingTest.sleep;
+import static demo.sbp.app.StubPluginManager.plugin;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Hold requests by {@link PluginLoadingLockServletFilter} while plugins are loading.
+ *
+ * @author <a href="https://github.com/hank-cp">Hank CP</a>
+ */
+public class PluginLoadingLockTest {
+
+    private StubPluginManager pluginManager;
+    private final CountDownLatch starting = new CountDownLatch(1);
+    private volatile long startingMillis;
+
+    @Before
+    public void setUp() throws Exception {
+        pluginManager = new StubPluginManager();
+        pluginManager.addPlugin("a", plugin(() -> {
+            starting.countDown();
+            sleep(startingMillis);
+        }));
+    }
+
+    private PluginLoadingLockServletFilter filter(Duration maxWait) {
+        PluginLoadingLockServletFilter filter = new PluginLoadingLockServletFilter(maxWait);
+        BeanUtil.setFieldValue(filter, "pluginManager", pluginManager);
+        return filter;
+    }
+
+    private CompletableFuture<Void> startPluginsAsync() throws InterruptedException {
+        CompletableFuture<Void> future = CompletableFuture.runAsync(pluginManager::startPlugins);
+        assertThat(starting.await(5, TimeUnit.SECONDS), is(true));
+        return future;
+    }
+
+    @Test
+    public void testHeldWhileLoading() throws Exception {
+        startingMillis = 300;
+        PluginLoadingLockServletFilter filter = filter(Duration.ofSeconds(5));
+        CompletableFuture<Void> loading = startPluginsAsync();
+
+        MockFilterChain chain = new MockFilterChain();
+        filter.doFilter(new MockHttpServletRequest("GET", "/foo"), new MockHttpServletResponse(), chain);
+
+        // request passes once loading is done
+        assertThat(pluginManager.getPlugin("a").getPluginState(), equalTo(PluginState.STARTED));
+        assertThat(chain.getRequest(), notNullValue());
+        assertThat(filter.getHeldRequestCount(), equalTo(1L));
+        assertThat(filter.getRejectedRequestCount(), equalTo(0L));
+        loading.join();
+    }
+
+    @Test
+    public void testRejectedAfterMaxWait() throws Exception {
+        startingMillis = 1000;
+        PluginLoadingLockServletFilter filter = filter(Duration.ofMillis(100));
+        CompletableFuture<Void> loading = startPluginsAsync();
+
+        MockFilterChain chain = new MockFilterChain();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(new MockHttpServletRequest("GET", "/foo"), response, chain);
+
+        assertThat(response.getStatus(), equalTo(503));
+        assertThat(response.getHeader(HttpHeaders.RETRY_AFTER), equalTo("1"));
+        assertThat(chain.getRequest(), nullValue());
+        assertThat(filter.getRejectedRequestCount(), equalTo(1L));
+        loading.join();
+    }
+
+    @Test
+    public void testDefaultMaxWait() throws Exception {
+        // loading-wait-timeout unset
+        PluginLoadingLockServletFilter filter = filter(null);
+        startingMillis = 300;
+        CompletableFuture<Void> loading = startPluginsAsync();
+
+        MockFilterChain chain = new MockFilterChain();
+        filter.doFilter(new MockHttpServletRequest("GET", "/foo"), new MockHttpServletResponse(), chain);
+
+        assertThat(chain.getRequest(), notNullValue());
+        assertThat(filter.getHeldRequestCount(), equalTo(1L));
+        loading.join();
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2019-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package demo.sbp.app;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.pf4j.PluginState;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static demo.sbp.app.StubPluginManager.plugin;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Start plugins in parallel by `spring.sbp.plugin-starting-threads`.
+ *
+ * @author <a href="https://github.com/hank-cp">Hank CP</a>
+ */
+public class PluginStartingTest {
+
+    private StubPluginManager pluginManager;
+    private final List<String> started = Collections.synchronizedList(new ArrayList<>());
+    private final List<ClassLoader> contextClassLoaders = Collections.synchronizedList(new ArrayList<>());
+
+    @Before
+    public void setUp() throws Exception {
+        pluginManager = new StubPluginManager();
+        pluginManager.setPluginStartingThreads(4);
+    }
+
+    private Runnable record(String pluginId) {
+        return () -> {
+            contextClassLoaders.add(Thread.currentThread().getContextClassLoader());
+            sleep(50);
+            started.add(pluginId);
+        };
+    }
+
+    @Test
+    public void testDependencyOrder() {
+        pluginManager.addPlugin("a", plugin(record("a")));
+        pluginManager.addPlugin("b", plugin(record("b")), "a");
+        pluginManager.addPlugin("c", plugin(record("c")), "b");
+        pluginManager.addPlugin("d", plugin(record("d")));
+
+        pluginManager.startPlugins();
+
+        assertThat(started, containsInAnyOrder("a", "b", "c", "d"));
+        assertThat(started.indexOf("a"), lessThan(started.indexOf("b")));
+        assertThat(started.indexOf("b"), lessThan(started.indexOf("c")));
+        assertThat(pluginManager.getPlugins(PluginState.STARTED), hasSize(4));
+        // workers use context class loader of caller
+        assertThat(contextClassLoaders, everyItem(sameInstance(Thread.currentThread().getContextClassLoader())));
+    }
+
+    @Test
+    public void testFailurePropagation() {
+        pluginManager.addPlugin("a", plugin(() -> {
+            throw new IllegalStateException("broken");
+        }));
+        pluginManager.addPlugin("b", plugin(record("b")), "a");
+        pluginManager.addPlugin("c", plugin(record("c")), "b");
+        pluginManager.addPlugin("d", plugin(record("d")));
+        pluginManager.addPlugin("e", plugin(() -> {
+            throw new NoClassDefFoundError("demo/Missing");
+        }));
+
+        pluginManager.startPlugins();
+
+        // dependents of failed plugin are never started
+        assertThat(started, contains("d"));
+        assertThat(pluginManager.getPlugin("a").getPluginState(), equalTo(PluginState.FAILED));
+        assertThat(pluginManager.getPlugin("b").getPluginState(), equalTo(PluginState.FAILED));
+        assertThat(pluginManager.getPlugin("c").getPluginState(), equalTo(PluginState.FAILED));
+        assertThat(pluginManager.getPlugin("d").getPluginState(), equalTo(PluginState.STARTED));
+        // LinkageError doesn't escape
+        assertThat(pluginManager.getPlugin("e").getPluginState(), equalTo(PluginState.FAILED));
+        assertThat(pluginManager.getPluginStartingError("a").errorMessage, equalTo("broken"));
+        assertThat(pluginManager.getPluginStartingError("c").errorMessage, containsString("b"));
+    }
+
+    @Test
+    public void testFailurePropagationOneByOne() {
+        pluginManager.setPluginStartingThreads(1);
+        pluginManager.addPlugin("a", plugin(() -> {
+            throw new IllegalStateException("broken");
+        }));
+        pluginManager.addPlugin("b", plugin(record("b")), "a");
+        pluginManager.addPlugin("d", plugin(record("d")));
+
+        pluginManager.startPlugins();
+
+        assertThat(started, contains("d"));
+        assertThat(pluginManager.getPlugin("b").getPluginState(), equalTo(PluginState.FAILED));
+    }
+
+    static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2019-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package demo.sbp.app;
+
+import net.bytebuddy.implementation.InvocationHandlerAdapter;
+import net.bytebuddy.matcher.ElementMatchers;
+import org.junit.Test;
+import org.laxture.sbp.internal.SharedBeanProxyCache;
+import org.laxture.sbp.util.BeanUtil;
+import org.laxture.sbp.util.OmitInvocationHandler;
+import org.laxture.sbp.util.ProxyInvocationHandler;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Proxies of shared beans generated by {@link SharedBeanProxyCache} should behave the
+ * same as the ones delegating every call by reflection, which they replaced.
+ *
+ * @author <a href="https://github.com/hank-cp">Hank CP</a>
+ */
+public class SharedBeanProxyCacheTest {
+
+    @Test
+    public void testSameAsReflectiveProxy() throws Exception {
+        SharedBeanProxyCache cache = new SharedBeanProxyCache();
+        SharedBean legacyTarget = new SharedBean("foo");
+        SharedBean legacy = legacyProxy(legacyTarget);
+        SharedBean target = new SharedBean("foo");
+        SharedBean proxy = cache.createProxy(target);
+
+        assertThat(proxy, not(sameInstance(target)));
+        assertThat(proxy, instanceOf(SharedBean.class));
+
+        // public methods
+        assertSame(legacy::greet, proxy::greet);
+        assertThat(proxy.greet(), equalTo("Hello foo"));
+        assertSame(() -> legacy.add(2), () -> proxy.add(2));
+        assertThat(target.count, equalTo(2));
+        // public method declared by non-public class
+        assertSame(legacy::baseName, proxy::baseName);
+        // non-public methods
+        assertSame(legacy::protectedCount, proxy::protectedCount);
+        assertSame(legacy::packageCount, proxy::packageCount);
+        // exceptions are thrown as is
+        assertSame(() -> exceptionOf(legacy::fail), () -> exceptionOf(proxy::fail));
+        assertThat(exceptionOf(proxy::fail), equalTo(IOException.class));
+        // lifecycle methods of imported beans are omitted
+        legacy.afterPropertiesSet();
+        legacy.destroy();
+        proxy.afterPropertiesSet();
+        proxy.destroy();
+        assertThat(legacyTarget.lifecycleCalls, equalTo(0));
+        assertThat(target.lifecycleCalls, equalTo(0));
+
+        // equality is delegated to target
+        assertThat(legacy.equals(legacyTarget), equalTo(proxy.equals(target)));
+        assertThat(proxy.equals(target), is(true));
+        assertThat(proxy.equals(proxy), equalTo(legacy.equals(legacy)));
+        assertThat(proxy.hashCode(), equalTo(target.hashCode()));
+        assertThat(proxy.toString(), equalTo(target.toString()));
+    }
+
+    @Test
+    public void testProxyClassReused() throws Exception {
+        SharedBeanProxyCache cache = new SharedBeanProxyCache();
+        SharedBean foo = cache.createProxy(new SharedBean("foo"));
+        SharedBean bar = cache.createProxy(new SharedBean("bar"));
+
+        assertThat(foo.getClass(), sameInstance(bar.getClass()));
+        assertThat(cache.getGeneratedCount(), equalTo(1L));
+        assertThat(cache.getReusedCount(), equalTo(1L));
+        // each proxy delegates to its own target
+        assertThat(foo.greet(), equalTo("Hello foo"));
+        assertThat(bar.greet(), equalTo("Hello bar"));
+        assertThat(cache.holds(SharedBean.class.getClassLoader()), is(true));
+
+        cache.evict(SharedBean.class.getClassLoader());
+        assertThat(cache.holds(SharedBean.class.getClassLoader()), is(false));
+    }
+
+    private static SharedBean legacyProxy(SharedBean source) {
+        return BeanUtil.createProxy(source, (bean, builder) -> builder
+            .method(ElementMatchers.any())
+                .intercept(InvocationHandlerAdapter.of(new ProxyInvocationHandler(bean)))
+            .method(ElementMatchers.anyOf(
+                BeanUtil.getMethod(InitializingBean.class, "afterPropertiesSet"),
+                BeanUtil.getMethod(DisposableBean.class, "destroy")))
+                .intercept(InvocationHandlerAdapter.of(new OmitInvocationHandler())));
+    }
+
+    private static <T> void assertSame(Callable<T> legacy, Callable<T> proxy) throws Exception {
+        assertThat(proxy.call(), equalTo(legacy.call()));
+    }
+
+    private interface Call {
+        void run() throws Exception;
+    }
+
+    private static Class<?> exceptionOf(Call runnable) {
+        try {
+            runnable.run();
+            return null;
+        } catch (Throwable t) {
+            return t.getClass();
+        }
+    }
+
+    static class NamedBean {
+
+        protected String name;
+
+        public String baseName() {
+            return name;
+        }
+    }
+
+    public static class SharedBean extends NamedBean implements InitializingBean, DisposableBean {
+
+        int count;
+
+        int lifecycleCalls;
+
+        public SharedBean() {}
+
+        SharedBean(String name) {
+            this.name = name;
+        }
+
+        public String greet() {
+            return "Hello " + name;
+        }
+
+        public int add(int delta) {
+            count += delta;
+            return count;
+        }
+
+        protected int protectedCount() {
+            return count;
+        }
+
+        int packageCount() {
+            return count;
+        }
+
+        public void fail() throws IOException {
+            throw new IOException("failed");
+        }
+
+        @Override
+        public void afterPropertiesSet() {
+            lifecycleCalls++;
+        }
+
+        @Override
+        public void destroy() {
+            lifecycleCalls++;
+        }
+    }
+}
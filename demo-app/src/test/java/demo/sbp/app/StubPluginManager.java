@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2019-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package demo.sbp.app;
+
+import org.laxture.sbp.SpringBootPluginManager;
+import org.laxture.sbp.util.BeanUtil;
+import org.pf4j.*;
+import org.springframework.context.support.GenericApplicationContext;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.Function;
+
+/**
+ * {@link SpringBootPluginManager} with plugins registered in memory instead of
+ * loaded from plugins root, to test plugin lifecycle without plugin projects.
+ *
+ * @author <a href="https://github.com/hank-cp">Hank CP</a>
+ */
+public class StubPluginManager extends SpringBootPluginManager {
+
+    public StubPluginManager() throws IOException {
+        super(Files.createTempDirectory("sbp-stub-plugins-"));
+        GenericApplicationContext applicationContext = new GenericApplicationContext();
+        applicationContext.refresh();
+        setApplicationContext(applicationContext);
+    }
+
+    /**
+     * Plugins should be added in dependency order, as they are resolved.
+     */
+    public PluginWrapper addPlugin(String pluginId,
+                                   Function<PluginWrapper, Plugin> pluginFactory,
+                                   String... dependencies) {
+        DefaultPluginDescriptor descriptor = new DefaultPluginDescriptor(pluginId, pluginId,
+            Plugin.class.getName(), "1.0.0", "*", "sbp", "Apache-2.0");
+        for (String dependency : dependencies) {
+            descriptor.addDependency(new PluginDependency(dependency));
+        }
+        Path pluginPath = getPluginsRoots().get(0).resolve(pluginId);
+        PluginWrapper pluginWrapper = new PluginWrapper(this, descriptor, pluginPath, getClass().getClassLoader());
+        BeanUtil.setFieldValue(pluginWrapper, "plugin", pluginFactory.apply(pluginWrapper));
+        pluginWrapper.setPluginState(PluginState.RESOLVED);
+        plugins.put(pluginId, pluginWrapper);
+        resolvedPlugins.add(pluginWrapper);
+        return pluginWrapper;
+    }
+
+    /**
+     * Plugin running given action on start.
+     */
+    public static Function<PluginWrapper, Plugin> plugin(Runnable onStart) {
+        return pluginWrapper -> new Plugin(pluginWrapper) {
+            @Override
+            public void start() {
+                onStart.run();
+            }
+        };
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2019-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.autoconfigure.web.reactive;
+
+import lombok.extern.slf4j.Slf4j;
+import org.laxture.sbp.SpringBootPluginManager;
+import org.laxture.sbp.internal.webflux.PluginRequestMappingHandlerMapping;
+import org.pf4j.PluginState;
+import org.pf4j.PluginWrapper;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.reactive.HandlerMapping;
+import org.springframework.web.reactive.result.method.RequestMappingInfo;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Start lazy plugins on first request to their path prefixes, and wake up hibernated
+ * plugins on request to their mappings, without blocking event-loop threads. Requests
+ * are resumed once the plugin is started, or answered with 503 after waiting for `maxWait`.
+ * Plugins failed on activation are answered with 503 until retry backoff is elapsed.
+ * Plugins stopped by admin, or failed otherwise, are left as they are, see
+ * {@link SpringBootPluginManager#isActivatable(String)}.
+ * <p>
+ * Requests handled by plugins are recorded to keep them from hibernation.
+ */
+@Slf4j
+@Order(PluginActivationFilter.ORDER)
+public class PluginActivationFilter implements WebFilter {
+
+    /** Right after {@link PluginLoadingLockServletFilter} */
+    public static final int ORDER = PluginLoadingLockServletFilter.ORDER + 1;
+
+    @Autowired
+    private SpringBootPluginManager pluginManager;
+
+    @Autowired
+    private ObjectProvider<PluginRequestMappingHandlerMapping> handlerMapping;
+
+    private final Duration maxWait;
+
+    private final LongAdder activationCount = new LongAdder();
+
+    private final LongAdder rejectedRequestCount = new LongAdder();
+
+    public PluginActivationFilter(Duration maxWait) {
+        this.maxWait = maxWait != null ? maxWait : PluginLoadingLockServletFilter.DEFAULT_MAX_WAIT;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        String path = exchange.getRequest().getPath().pathWithinApplication().value();
+        String pluginId = pluginManager.getLazyPluginId(path);
+        if (pluginId == null) pluginId = lookupHibernatedPluginId(exchange);
+        PluginWrapper plugin = pluginId != null ? pluginManager.getPlugin(pluginId) : null;
+        if (plugin == null || plugin.getPluginState() == PluginState.STARTED) return filterAndTouch(exchange, chain);
+        long retryDelay = pluginManager.getActivationRetryDelay(pluginId);
+        if (retryDelay > 0) return reject(exchange, retryDelay);
+        if (!pluginManager.isActivatable(pluginId)) return filterAndTouch(exchange, chain);
+
+        log.debug("Activating plugin {} for request {}", pluginId, path);
+        activationCount.increment();
+        return Mono.fromFuture(pluginManager.activatePlugin(pluginId))
+            .timeout(maxWait)
+            .map(pluginState -> pluginState == PluginState.STARTED)
+            .onErrorResume(ex -> {
+                if (!(ex instanceof TimeoutException)) log.debug("Plugin {} is not activated", pluginId, ex);
+                return Mono.just(false);
+            })
+            .flatMap(started -> started ? filterAndTouch(exchange, chain) : reject(exchange, maxWait.toMillis()));
+    }
+
+    private Mono<Void> filterAndTouch(ServerWebExchange exchange, WebFilterChain chain) {
+        if (!pluginManager.isHibernationEnabled()) return chain.filter(exchange);
+        return chain.filter(exchange).doFinally(signal -> touchHandlerPlugin(exchange));
+    }
+
+    private String lookupHibernatedPluginId(ServerWebExchange exchange) {
+        Set<String> hibernatedPluginIds = pluginManager.getHibernatedPluginIds();
+        if (hibernatedPluginIds.isEmpty()) return null;
+        PluginRequestMappingHandlerMapping mapping = handlerMapping.getIfUnique();
+        if (mapping == null) return null;
+        // mappings of stopped plugins are retained
+        for (String pluginId : hibernatedPluginIds) {
+            for (RequestMappingInfo mappingInfo : mapping.getPluginMappings(pluginId)) {
+                if (mappingInfo.getMatchingCondition(exchange) != null) return pluginId;
+            }
+        }
+        return null;
+    }
+
+    private void touchHandlerPlugin(ServerWebExchange exchange) {
+        Object handler = exchange.getAttribute(HandlerMapping.BEST_MATCHING_HANDLER_ATTRIBUTE);
+        if (handler == null) return;
+        Class<?> handlerType = handler instanceof HandlerMethod
+            ? ((HandlerMethod) handler).getBeanType() : handler.getClass();
+        PluginWrapper plugin = pluginManager.whichPlugin(handlerType);
+        if (plugin != null) pluginManager.touchPlugin(plugin.getPluginId());
+    }
+
+    private Mono<Void> reject(ServerWebExchange exchange, long retryAfterMillis) {
+        rejectedRequestCount.increment();
+        exchange.getResponse().setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+        exchange.getResponse().getHeaders().set(HttpHeaders.RETRY_AFTER,
+            String.valueOf(Math.max(1, TimeUnit.MILLISECONDS.toSeconds(retryAfterMillis + 999))));
+        return exchange.getResponse().setComplete();
+    }
+
+    /**
+     * @return count of requests triggered plugin activation or waking up, concurrent ones included
+     */
+    public long getActivationCount() {
+        return activationCount.sum();
+    }
+
+    /**
+     * @return count of requests answered with 503 because plugin is not activated in time,
+     * or its activation failed
+     */
+    public long getRejectedRequestCount() {
+        return rejectedRequestCount.sum();
+    }
+}
@@ -2,24 +2,121 @@ package org.springframework.boot.autoconfigure.web.reactive;
 
 import lombok.extern.slf4j.Slf4j;
 import org.laxture.sbp.SpringBootPluginManager;
+import org.laxture.sbp.internal.webflux.PluginRequestMappingHandlerMapping;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.result.method.RequestMappingInfo;
 import org.springframework.web.server.ServerWebExchange;
 import org.springframework.web.server.WebFilter;
 import org.springframework.web.server.WebFilterChain;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hold incoming requests while plugins are loading without blocking event-loop threads.
+ * Requests are resumed once {@link SpringBootPluginManager} finishes loading, or answered
+ * with 503 after waiting for `maxWait`. When a single plugin is loading, only requests
+ * mapped to it are held.
+ */
 @Slf4j
+@Order(PluginLoadingLockServletFilter.ORDER)
 public class PluginLoadingLockServletFilter implements WebFilter {
 
     @Autowired
     private SpringBootPluginManager pluginManager;
 
+    @Autowired
+    private ObjectProvider<PluginRequestMappingHandlerMapping> handlerMapping;
+
+    /** Runs before {@link PluginActivationFilter}, so activation sees plugins loaded */
+    public static final int ORDER = Ordered.LOWEST_PRECEDENCE - 10;
+
+    /** Used if `maxWait` is not set, same as default of `spring.sbp.loading-wait-timeout` */
+    public static final Duration DEFAULT_MAX_WAIT = Duration.ofSeconds(30);
+
+    private final Duration maxWait;
+
+    private final LongAdder heldRequestCount = new LongAdder();
+
+    private final LongAdder rejectedRequestCount = new LongAdder();
+
+    private final LongAdder heldMillis = new LongAdder();
+
+    public PluginLoadingLockServletFilter(Duration maxWait) {
+        this.maxWait = maxWait != null ? maxWait : DEFAULT_MAX_WAIT;
+    }
+
     @Override
     public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
-        while (true) {
-            if (!pluginManager.isLoading()) break;
+        CompletableFuture<Void> loadedFuture;
+        if (pluginManager.isLoading()) {
             log.debug("Plugin loading, waiting...");
+            loadedFuture = pluginManager.whenLoaded();
+        } else {
+            String pluginId = lookupLoadingPluginId(exchange);
+            if (pluginId == null) return chain.filter(exchange);
+            log.debug("Plugin {} loading, waiting...", pluginId);
+            loadedFuture = pluginManager.whenLoaded(pluginId);
         }
-        return chain.filter(exchange);
+
+        heldRequestCount.increment();
+        long startTs = System.currentTimeMillis();
+        return Mono.fromFuture(loadedFuture)
+            .timeout(maxWait)
+            .doFinally(signal -> heldMillis.add(System.currentTimeMillis() - startTs))
+            .thenReturn(true)
+            .onErrorResume(TimeoutException.class, ex -> Mono.just(false))
+            .flatMap(loaded -> loaded ? chain.filter(exchange) : reject(exchange));
+    }
+
+    private String lookupLoadingPluginId(ServerWebExchange exchange) {
+        Set<String> loadingPluginIds = pluginManager.getLoadingPluginIds();
+        if (loadingPluginIds.isEmpty()) return null;
+        PluginRequestMappingHandlerMapping mapping = handlerMapping.getIfUnique();
+        if (mapping == null) return null;
+        for (String pluginId : loadingPluginIds) {
+            for (RequestMappingInfo mappingInfo : mapping.getPluginMappings(pluginId)) {
+                if (mappingInfo.getMatchingCondition(exchange) != null) return pluginId;
+            }
+        }
+        return null;
+    }
+
+    private Mono<Void> reject(ServerWebExchange exchange) {
+        rejectedRequestCount.increment();
+        exchange.getResponse().setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+        exchange.getResponse().getHeaders().set(HttpHeaders.RETRY_AFTER,
+            String.valueOf(Math.max(1, maxWait.getSeconds())));
+        return exchange.getResponse().setComplete();
+    }
+
+    /**
+     * @return count of requests held because of plugins loading
+     */
+    public long getHeldRequestCount() {
+        return heldRequestCount.sum();
+    }
+
+    /**
+     * @return count of requests answered with 503 because plugins loading took longer than `maxWait`
+     */
+    public long getRejectedRequestCount() {
+        return rejectedRequestCount.sum();
+    }
+
+    /**
+     * @return total milliseconds requests have been held
+     */
+    public long getHeldMillis() {
+        return heldMillis.sum();
     }
-}
\ No newline at end of file
+}
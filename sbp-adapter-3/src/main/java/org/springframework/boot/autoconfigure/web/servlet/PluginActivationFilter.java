@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2019-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.autoconfigure.web.servlet;
+
+import jakarta.servlet.*;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.laxture.sbp.SpringBootPluginManager;
+import org.laxture.sbp.internal.webmvc.PluginRequestMappingHandlerMapping;
+import org.pf4j.PluginState;
+import org.pf4j.PluginWrapper;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.mvc.method.RequestMappingInfo;
+import org.springframework.web.util.ServletRequestPathUtils;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Start lazy plugins on first request to their path prefixes, and wake up hibernated
+ * plugins on request to their mappings. Requests are held until the plugin is started,
+ * or answered with 503 after waiting for `maxWait`. Plugins failed on activation are
+ * answered with 503 until retry backoff is elapsed. Plugins stopped by admin, or failed
+ * otherwise, are left as they are, see {@link SpringBootPluginManager#isActivatable(String)}.
+ * <p>
+ * Requests handled by plugins are recorded to keep them from hibernation.
+ */
+@Slf4j
+@Order(PluginActivationFilter.ORDER)
+public class PluginActivationFilter implements Filter {
+
+    /** Right after {@link PluginLoadingLockServletFilter} */
+    public static final int ORDER = PluginLoadingLockServletFilter.ORDER + 1;
+
+    @Autowired
+    private SpringBootPluginManager pluginManager;
+
+    @Autowired
+    private ObjectProvider<PluginRequestMappingHandlerMapping> handlerMapping;
+
+    private final Duration maxWait;
+
+    private final LongAdder activationCount = new LongAdder();
+
+    private final LongAdder rejectedRequestCount = new LongAdder();
+
+    public PluginActivationFilter(Duration maxWait) {
+        this.maxWait = maxWait != null ? maxWait : PluginLoadingLockServletFilter.DEFAULT_MAX_WAIT;
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
+        HttpServletRequest httpRequest = (HttpServletRequest) request;
+        String pluginId = pluginManager.getLazyPluginId(
+            httpRequest.getRequestURI().substring(httpRequest.getContextPath().length()));
+        if (pluginId == null) pluginId = lookupHibernatedPluginId(httpRequest);
+        PluginWrapper plugin = pluginId != null ? pluginManager.getPlugin(pluginId) : null;
+        if (plugin != null && plugin.getPluginState() != PluginState.STARTED) {
+            long retryDelay = pluginManager.getActivationRetryDelay(pluginId);
+            if (retryDelay > 0) {
+                reject((HttpServletResponse) response, retryDelay);
+                return;
+            }
+            if (pluginManager.isActivatable(pluginId) && !activate(pluginId, httpRequest)) {
+                reject((HttpServletResponse) response, maxWait.toMillis());
+                return;
+            }
+        }
+        chain.doFilter(request, response);
+        if (pluginManager.isHibernationEnabled()) touchHandlerPlugin(request);
+    }
+
+    private boolean activate(String pluginId, HttpServletRequest request) {
+        log.debug("Activating plugin {} for request {}", pluginId, request.getRequestURI());
+        activationCount.increment();
+        try {
+            return pluginManager.activatePlugin(pluginId)
+                .get(maxWait.toMillis(), TimeUnit.MILLISECONDS) == PluginState.STARTED;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            log.debug("Plugin {} is not activated in time", pluginId, e);
+        }
+        return false;
+    }
+
+    private void reject(HttpServletResponse response, long retryAfterMillis) throws IOException {
+        rejectedRequestCount.increment();
+        response.setHeader(HttpHeaders.RETRY_AFTER,
+            String.valueOf(Math.max(1, TimeUnit.MILLISECONDS.toSeconds(retryAfterMillis + 999))));
+        response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+    }
+
+    private String lookupHibernatedPluginId(HttpServletRequest request) {
+        Set<String> hibernatedPluginIds = pluginManager.getHibernatedPluginIds();
+        if (hibernatedPluginIds.isEmpty()) return null;
+        PluginRequestMappingHandlerMapping mapping = handlerMapping.getIfUnique();
+        if (mapping == null) return null;
+
+        // request path is not resolved yet before reaching DispatcherServlet
+        boolean parsed = false;
+        if (mapping.getPatternParser() != null && !ServletRequestPathUtils.hasParsedRequestPath(request)) {
+            ServletRequestPathUtils.parseAndCache(request);
+            parsed = true;
+        }
+        try {
+            if (mapping.getPatternParser() == null) mapping.getUrlPathHelper().resolveAndCacheLookupPath(request);
+            // mappings of stopped plugins are retained
+            for (String pluginId : hibernatedPluginIds) {
+                for (RequestMappingInfo mappingInfo : mapping.getPluginMappings(pluginId)) {
+                    if (mappingInfo.getMatchingCondition(request) != null) return pluginId;
+                }
+            }
+            return null;
+        } finally {
+            if (parsed) ServletRequestPathUtils.clearParsedRequestPath(request);
+        }
+    }
+
+    private void touchHandlerPlugin(ServletRequest request) {
+        Object handler = request.getAttribute(HandlerMapping.BEST_MATCHING_HANDLER_ATTRIBUTE);
+        if (handler == null) return;
+        Class<?> handlerType = handler instanceof HandlerMethod
+            ? ((HandlerMethod) handler).getBeanType() : handler.getClass();
+        PluginWrapper plugin = pluginManager.whichPlugin(handlerType);
+        if (plugin != null) pluginManager.touchPlugin(plugin.getPluginId());
+    }
+
+    /**
+     * @return count of requests triggered plugin activation or waking up, concurrent ones included
+     */
+    public long getActivationCount() {
+        return activationCount.sum();
+    }
+
+    /**
+     * @return count of requests answered with 503 because plugin is not activated in time,
+     * or its activation failed
+     */
+    public long getRejectedRequestCount() {
+        return rejectedRequestCount.sum();
+    }
+}
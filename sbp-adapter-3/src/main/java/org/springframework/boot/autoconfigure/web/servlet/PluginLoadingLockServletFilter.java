@@ -1,24 +1,135 @@
 package org.springframework.boot.autoconfigure.web.servlet;
 
 import jakarta.servlet.*;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.extern.slf4j.Slf4j;
 import org.laxture.sbp.SpringBootPluginManager;
+import org.laxture.sbp.internal.webmvc.PluginRequestMappingHandlerMapping;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.servlet.mvc.method.RequestMappingInfo;
+import org.springframework.web.util.ServletRequestPathUtils;
 
 import java.io.IOException;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * Hold incoming requests while plugins are loading. Requests are parked until
+ * {@link SpringBootPluginManager} finishes loading, or answered with 503 after
+ * waiting for `maxWait`. When a single plugin is loading, only requests mapped to
+ * it are held.
+ */
 @Slf4j
+@Order(PluginLoadingLockServletFilter.ORDER)
 public class PluginLoadingLockServletFilter implements Filter {
 
     @Autowired
     private SpringBootPluginManager pluginManager;
 
+    @Autowired
+    private ObjectProvider<PluginRequestMappingHandlerMapping> handlerMapping;
+
+    /** Runs before {@link PluginActivationFilter}, so activation sees plugins loaded */
+    public static final int ORDER = Ordered.LOWEST_PRECEDENCE - 10;
+
+    /** Used if `maxWait` is not set, same as default of `spring.sbp.loading-wait-timeout` */
+    public static final Duration DEFAULT_MAX_WAIT = Duration.ofSeconds(30);
+
+    private final Duration maxWait;
+
+    private final LongAdder heldRequestCount = new LongAdder();
+
+    private final LongAdder rejectedRequestCount = new LongAdder();
+
+    private final LongAdder heldMillis = new LongAdder();
+
+    public PluginLoadingLockServletFilter(Duration maxWait) {
+        this.maxWait = maxWait != null ? maxWait : DEFAULT_MAX_WAIT;
+    }
+
     @Override
     public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
-        while (true) {
-            if (!pluginManager.isLoading()) break;
-            log.debug("Plugin loading, waiting...");
+        String pluginId = null;
+        boolean loading = pluginManager.isLoading();
+        if (!loading) {
+            pluginId = lookupLoadingPluginId((HttpServletRequest) request);
+            loading = pluginId != null;
+        }
+        if (loading) {
+            log.debug("Plugin {} loading, waiting...", pluginId != null ? pluginId : "");
+            heldRequestCount.increment();
+            long startTs = System.currentTimeMillis();
+            boolean loaded;
+            try {
+                loaded = pluginId != null
+                    ? pluginManager.awaitLoaded(pluginId, maxWait.toMillis(), TimeUnit.MILLISECONDS)
+                    : pluginManager.awaitLoaded(maxWait.toMillis(), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                loaded = false;
+            }
+            heldMillis.add(System.currentTimeMillis() - startTs);
+            if (!loaded) {
+                rejectedRequestCount.increment();
+                HttpServletResponse httpResponse = (HttpServletResponse) response;
+                httpResponse.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, maxWait.getSeconds())));
+                httpResponse.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                return;
+            }
         }
         chain.doFilter(request, response);
     }
-}
\ No newline at end of file
+
+    private String lookupLoadingPluginId(HttpServletRequest request) {
+        Set<String> loadingPluginIds = pluginManager.getLoadingPluginIds();
+        if (loadingPluginIds.isEmpty()) return null;
+        PluginRequestMappingHandlerMapping mapping = handlerMapping.getIfUnique();
+        if (mapping == null) return null;
+
+        // request path is not resolved yet before reaching DispatcherServlet
+        boolean parsed = false;
+        if (mapping.getPatternParser() != null && !ServletRequestPathUtils.hasParsedRequestPath(request)) {
+            ServletRequestPathUtils.parseAndCache(request);
+            parsed = true;
+        }
+        try {
+            if (mapping.getPatternParser() == null) mapping.getUrlPathHelper().resolveAndCacheLookupPath(request);
+            for (String pluginId : loadingPluginIds) {
+                for (RequestMappingInfo mappingInfo : mapping.getPluginMappings(pluginId)) {
+                    if (mappingInfo.getMatchingCondition(request) != null) return pluginId;
+                }
+            }
+            return null;
+        } finally {
+            if (parsed) ServletRequestPathUtils.clearParsedRequestPath(request);
+        }
+    }
+
+    /**
+     * @return count of requests held because of plugins loading
+     */
+    public long getHeldRequestCount() {
+        return heldRequestCount.sum();
+    }
+
+    /**
+     * @return count of requests answered with 503 because plugins loading took longer than `maxWait`
+     */
+    public long getRejectedRequestCount() {
+        return rejectedRequestCount.sum();
+    }
+
+    /**
+     * @return total milliseconds requests have been held
+     */
+    public long getHeldMillis() {
+        return heldMillis.sum();
+    }
+}
@@ -15,20 +15,30 @@
  */
 package org.springframework.boot.autoconfigure.web.servlet;
 
+import org.laxture.sbp.internal.PluginResourceChainCache;
+import org.laxture.sbp.internal.PluginResourceIndex;
 import org.laxture.sbp.internal.webmvc.PluginResourceResolver;
 import org.laxture.sbp.spring.boot.SbpPluginStateChangedEvent;
+import org.pf4j.PluginManager;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.web.WebProperties;
 import org.springframework.boot.autoconfigure.web.WebProperties.Resources;
-import org.springframework.cache.Cache;
-import org.springframework.cache.concurrent.ConcurrentMapCache;
+import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationListener;
+import org.springframework.util.ResourceUtils;
+import org.springframework.util.StringUtils;
 import org.springframework.web.servlet.config.annotation.ResourceChainRegistration;
 import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistration;
 import org.springframework.web.servlet.resource.EncodedResourceResolver;
 import org.springframework.web.servlet.resource.ResourceResolver;
 import org.springframework.web.servlet.resource.VersionResourceResolver;
 
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Provide static resources lookup for plugin.
  *
@@ -36,34 +46,77 @@ import org.springframework.web.servlet.resource.VersionResourceResolver;
  */
 public class PluginResourceHandlerRegistrationCustomizer implements
     WebMvcAutoConfiguration.ResourceHandlerRegistrationCustomizer,
-    ApplicationListener<SbpPluginStateChangedEvent> {
+    ApplicationListener<SbpPluginStateChangedEvent>, DisposableBean {
 
     private static final String DEFAULT_CACHE_NAME = "sbp-resource-chain-cache";
 
     @Autowired
     private WebProperties webProperties;
 
-    private Cache sbpResourceCache;
+    private final int cacheMaxSize;
+
+    private final Duration cacheTimeToLive;
+
+    private final Path extractDir;
+
+    private final boolean compress;
+
+    private PluginResourceChainCache sbpResourceCache;
+
+    private PluginResourceIndex resourceIndex;
+
+    public PluginResourceHandlerRegistrationCustomizer() {
+        this(PluginResourceChainCache.DEFAULT_MAX_SIZE, PluginResourceChainCache.DEFAULT_TIME_TO_LIVE, null, false);
+    }
+
+    /**
+     * @param extractDir directory to extract plugin static resources to, null to
+     *                   serve them from plugin classpath.
+     * @param compress generate gzip variants of extracted resources in background.
+     */
+    public PluginResourceHandlerRegistrationCustomizer(int cacheMaxSize, Duration cacheTimeToLive,
+                 Path extractDir, boolean compress) {
+        this.cacheMaxSize = cacheMaxSize;
+        this.cacheTimeToLive = cacheTimeToLive;
+        this.extractDir = extractDir;
+        this.compress = compress;
+    }
 
     @Override
     public void customize(ResourceHandlerRegistration registration) {
         if (sbpResourceCache == null) {
-            sbpResourceCache = new ConcurrentMapCache(DEFAULT_CACHE_NAME);
+            sbpResourceCache = new PluginResourceChainCache(DEFAULT_CACHE_NAME, cacheMaxSize, cacheTimeToLive);
         }
         Resources resourcesProperties = this.webProperties.getResources();
         if (resourcesProperties == null) resourcesProperties = new Resources();
         Resources.Chain properties = resourcesProperties.getChain();
         ResourceChainRegistration chain = registration.resourceChain(properties.isCache(), sbpResourceCache);
 
-        chain.addResolver(new PluginResourceResolver());
+        if (resourceIndex == null) {
+            resourceIndex = new PluginResourceIndex(getClassPathLocations(resourcesProperties), extractDir, compress);
+        }
 
+        // encoded and versioned resources are looked up via plugin resolver, which
+        // is a terminal resolver and must be the last one.
         Resources.Chain.Strategy strategy = properties.getStrategy();
-        if (properties.isCompressed()) {
+        if (properties.isCompressed() || compress) {
             chain.addResolver(new EncodedResourceResolver());
         }
         if (strategy.getFixed().isEnabled() || strategy.getContent().isEnabled()) {
             chain.addResolver(getVersionResourceResolver(strategy));
         }
+        chain.addResolver(new PluginResourceResolver(resourceIndex));
+    }
+
+    private List<String> getClassPathLocations(Resources resourcesProperties) {
+        List<String> locations = new ArrayList<>();
+        for (String location : resourcesProperties.getStaticLocations()) {
+            if (!location.startsWith(ResourceUtils.CLASSPATH_URL_PREFIX)) continue;
+            String path = StringUtils.trimLeadingCharacter(
+                location.substring(ResourceUtils.CLASSPATH_URL_PREFIX.length()), '/');
+            locations.add(path.isEmpty() || path.endsWith("/") ? path : path + "/");
+        }
+        return locations;
     }
 
     private ResourceResolver getVersionResourceResolver(Resources.Chain.Strategy properties) {
@@ -82,7 +135,20 @@ public class PluginResourceHandlerRegistrationCustomizer implements
 
     @Override
     public void onApplicationEvent(SbpPluginStateChangedEvent event) {
-        if (sbpResourceCache == null) return;
-        sbpResourceCache.clear();
+        PluginManager pluginManager = ((ApplicationContext) event.getSource()).getBean(PluginManager.class);
+        if (resourceIndex != null) resourceIndex.refresh(pluginManager);
+        if (sbpResourceCache != null) sbpResourceCache.refresh(pluginManager);
+    }
+
+    @Override
+    public void destroy() {
+        if (resourceIndex != null) resourceIndex.close();
+    }
+
+    /**
+     * @return resource chain cache, for hit/miss statistics.
+     */
+    public PluginResourceChainCache getResourceCache() {
+        return sbpResourceCache;
     }
 }
@@ -27,13 +27,17 @@ import org.pf4j.Plugin;
 import org.pf4j.PluginState;
 import org.pf4j.PluginWrapper;
 import org.springframework.beans.factory.support.AbstractAutowireCapableBeanFactory;
+import org.springframework.boot.context.metrics.buffering.BufferingApplicationStartup;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.core.metrics.ApplicationStartup;
+import org.springframework.core.metrics.StartupStep;
 import org.springframework.stereotype.Controller;
 import org.springframework.util.Assert;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.time.Instant;
 import java.util.*;
 
 /**
@@ -72,6 +76,7 @@ public abstract class SpringBootPlugin extends Plugin {
     private final Set<String> injectedExtensionNames = new HashSet<>();
 
     private final List<IPluginConfigurer> pluginConfigurers = new ArrayList<>();
+    private volatile boolean prepared;
 
     public SpringBootPlugin(PluginWrapper wrapper,
                             IPluginConfigurer... pluginConfigurers) {
@@ -94,19 +99,79 @@ public abstract class SpringBootPlugin extends Plugin {
         springBootstrap = createSpringBootstrap();
     }
 
+    /**
+     * Call {@link IPluginConfigurer#onPrepare} before plugin is bootstrapped. Plugins
+     * started together are prepared in one go by {@link SpringBootPluginManager#preparePlugins},
+     * so refreshes requested by configurers are run once for all of them.
+     */
+    public void prepare() {
+        if (prepared) return;
+        for (IPluginConfigurer configurer : this.pluginConfigurers) {
+            configurer.onPrepare(this);
+        }
+        prepared = true;
+    }
+
     @Override
     public void start() {
         if (getWrapper().getPluginState() == PluginState.STARTED) return;
 
         long startTs = System.currentTimeMillis();
         log.debug("Starting plugin {} ......", getWrapper().getPluginId());
+        if (!prepared) getPluginManager().preparePlugins(Collections.singletonList(getWrapper()));
+
+        ApplicationStartup startup = springBootstrap.getApplicationStartup();
+        // discard steps left behind by last failed starting
+        if (startup instanceof BufferingApplicationStartup) {
+            ((BufferingApplicationStartup) startup).drainBufferedTimeline();
+        }
+        StartupStep bootstrapStep = startup.start(PluginStartupReport.STEP_BOOTSTRAP);
+        try {
+            // plugins might be started in parallel, only bootstrapping is run concurrently
+            applicationContext = springBootstrap.run();
+        } finally {
+            bootstrapStep.end();
+        }
+        synchronized (getPluginManager().getMainContextMonitor()) {
+            registerToMainContext(startup);
+        }
+        applicationContext.publishEvent(new SbpPluginStartedEvent(applicationContext));
+        if (getPluginManager().isMainApplicationStarted()) {
+            // if main application context is not ready, don't send restart event
+            applicationContext.publishEvent(new SbpPluginRestartedEvent(applicationContext));
+        }
 
-        applicationContext = springBootstrap.run();
+        long startingMillis = System.currentTimeMillis() - startTs;
+        getPluginManager().setPluginStartupReport(PluginStartupReport.of(getWrapper().getPluginId(),
+            Instant.ofEpochMilli(startTs), startingMillis, getPluginManager().getPluginLoadingMillis(getWrapper().getPluginId()),
+            startup instanceof BufferingApplicationStartup
+                ? ((BufferingApplicationStartup) startup).drainBufferedTimeline() : null));
+        log.debug("Plugin {} is started in {}ms", getWrapper().getPluginId(), startingMillis);
+    }
+
+    private void registerToMainContext(ApplicationStartup startup) {
         for (IPluginConfigurer configurer : this.pluginConfigurers) {
-            configurer.onStart(this);
+            StartupStep configurerStep = startup.start(PluginStartupReport.STEP_CONFIGURER_START)
+                .tag("configurer", configurer.getClass().getName());
+            try {
+                configurer.onStart(this);
+            } finally {
+                configurerStep.end();
+            }
         }
 
         // register Extensions
+        StartupStep extensionsStep = startup.start(PluginStartupReport.STEP_REGISTER_EXTENSIONS);
+        try {
+            registerExtensions();
+        } finally {
+            extensionsStep.end();
+        }
+
+        ApplicationContextProvider.registerApplicationContext(applicationContext);
+    }
+
+    private void registerExtensions() {
         Set<String> extensionClassNames = getWrapper().getPluginManager()
                 .getExtensionClassNames(getWrapper().getPluginId());
         for (String extensionClassName : extensionClassNames) {
@@ -123,15 +188,6 @@ public abstract class SpringBootPlugin extends Plugin {
                 throw new IllegalArgumentException(e.getMessage(), e);
             }
         }
-
-        ApplicationContextProvider.registerApplicationContext(applicationContext);
-        applicationContext.publishEvent(new SbpPluginStartedEvent(applicationContext));
-        if (getPluginManager().isMainApplicationStarted()) {
-            // if main application context is not ready, don't send restart event
-            applicationContext.publishEvent(new SbpPluginRestartedEvent(applicationContext));
-        }
-
-        log.debug("Plugin {} is started in {}ms", getWrapper().getPluginId(), System.currentTimeMillis() - startTs);
     }
 
     @Override
@@ -139,19 +195,24 @@ public abstract class SpringBootPlugin extends Plugin {
         if (getWrapper().getPluginState() != PluginState.STARTED) return;
 
         log.debug("Stopping plugin {} ......", getWrapper().getPluginId());
-        // unregister Extension beans
-        for (String extensionName : injectedExtensionNames) {
-            log.debug("Unregister extension <{}> to main ApplicationContext", extensionName);
-            unregisterBeanFromMainContext(extensionName);
-        }
+        synchronized (getPluginManager().getMainContextMonitor()) {
+            // unregister Extension beans
+            for (String extensionName : injectedExtensionNames) {
+                log.debug("Unregister extension <{}> to main ApplicationContext", extensionName);
+                unregisterBeanFromMainContext(extensionName);
+            }
 
-        for (IPluginConfigurer configurer : this.pluginConfigurers) {
-            configurer.onStop(this);
+            for (IPluginConfigurer configurer : this.pluginConfigurers) {
+                configurer.onStop(this);
+            }
         }
         applicationContext.publishEvent(new SbpPluginStoppedEvent(applicationContext));
-        ApplicationContextProvider.unregisterApplicationContext(applicationContext);
+        synchronized (getPluginManager().getMainContextMonitor()) {
+            ApplicationContextProvider.unregisterApplicationContext(applicationContext);
+        }
         injectedExtensionNames.clear();
         ((ConfigurableApplicationContext) applicationContext).close();
+        prepared = false;
 
         log.debug("Plugin {} is stopped", getWrapper().getPluginId());
     }
@@ -161,6 +222,13 @@ public abstract class SpringBootPlugin extends Plugin {
      */
     public static void releaseLegacyResources(PluginWrapper plugin,
                                               GenericApplicationContext mainAppCtx) {
+        synchronized (((SpringBootPluginManager) plugin.getPluginManager()).getMainContextMonitor()) {
+            doReleaseLegacyResources(plugin, mainAppCtx);
+        }
+    }
+
+    private static void doReleaseLegacyResources(PluginWrapper plugin,
+                                                 GenericApplicationContext mainAppCtx) {
         try {
             // unregister Extension beans
             Set<String> extensionClassNames = plugin.getPluginManager()
@@ -175,6 +243,7 @@ public abstract class SpringBootPlugin extends Plugin {
             }
 
             SpringBootPlugin springBootPlugin = (SpringBootPlugin) plugin.getPlugin();
+            springBootPlugin.prepared = false;
             for (IPluginConfigurer configurer : springBootPlugin.pluginConfigurers) {
                 configurer.releaseLeaveOverResource(plugin, mainAppCtx);
             }
@@ -17,19 +17,42 @@ package org.laxture.sbp;
 
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
+import org.laxture.sbp.internal.AutoConfigurationConditionCache;
+import org.laxture.sbp.internal.PluginClassLoaderLeakDetector;
+import org.laxture.sbp.internal.PluginInventory;
+import org.laxture.sbp.internal.PluginPathPrefixes;
+import org.laxture.sbp.internal.PluginRequestMappingAdapter;
+import org.laxture.sbp.internal.SharedBeanProxyCache;
 import org.laxture.sbp.internal.SpringExtensionFactory;
+import org.laxture.sbp.spring.boot.IPluginConfigurer;
+import org.laxture.sbp.spring.boot.PluginHibernationPolicy;
 import org.laxture.sbp.spring.boot.PluginStartingError;
+import org.laxture.sbp.spring.boot.PluginStartupReport;
 import org.laxture.sbp.spring.boot.SbpPluginStateChangedEvent;
 import org.pf4j.*;
 import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
 import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
 
 /**
  * PluginManager to hold the main ApplicationContext
@@ -38,7 +61,9 @@ import java.util.concurrent.locks.ReentrantLock;
  */
 @Slf4j
 public class SpringBootPluginManager extends DefaultPluginManager
-        implements ApplicationContextAware, InitializingBean {
+        implements ApplicationContextAware, InitializingBean, DisposableBean {
+
+    public static final Duration DEFAULT_ACTIVATION_RETRY_BACKOFF = Duration.ofSeconds(30);
 
     private boolean mainApplicationStarted;
     private GenericApplicationContext mainApplicationContext;
@@ -46,10 +71,49 @@ public class SpringBootPluginManager extends DefaultPluginManager
     private boolean autoStartPlugin = true;
     private String[] profiles;
     private PluginRepository pluginRepository;
-    private final Map<String, PluginStartingError> startingErrors = new HashMap<>();
+    private final Map<String, PluginStartingError> startingErrors = new ConcurrentHashMap<>();
+    private int pluginStartingThreads = 1;
+    private final Object pluginStateMonitor = new Object();
+    private final Object mainContextMonitor = new Object();
+    private final AtomicLong pluginsRevision = new AtomicLong();
+    private final AtomicLong pluginStatesRevision = new AtomicLong();
+    private final SharedBeanProxyCache sharedBeanProxyCache = new SharedBeanProxyCache();
+    private final Map<String, Long> pluginLoadingMillis = new ConcurrentHashMap<>();
+    private final Map<String, PluginStartupReport> startupReports = new ConcurrentHashMap<>();
+    private final Set<String> reloadingPluginIds = ConcurrentHashMap.newKeySet();
+    private volatile AutoConfigurationConditionCache autoConfigurationConditionCache;
+    private PluginClassLoaderLeakDetector classLoaderLeakDetector;
+    private boolean watchPluginsRoot = true;
+    private volatile PluginInventory pluginInventory;
+
+    private boolean lazyActivation;
+    private Duration activationIdleTimeout;
+    // plugin id -> path prefixes, of plugins started on first request
+    private volatile Map<String, List<String>> lazyPlugins = Collections.emptyMap();
+    private final Map<String, CompletableFuture<PluginState>> activations = new ConcurrentHashMap<>();
+    private Duration activationRetryBackoff = DEFAULT_ACTIVATION_RETRY_BACKOFF;
+    // plugin id -> time its activation failed
+    private final Map<String, Long> failedActivations = new ConcurrentHashMap<>();
+    private final Map<String, Long> lastAccessTimes = new ConcurrentHashMap<>();
+    private ExecutorService activationExecutor;
+    private Duration hibernationIdleTimeout;
+    private PluginHibernationPolicy hibernationPolicy = this::isIdleTimeout;
+    private final Set<String> hibernatedPluginIds = ConcurrentHashMap.newKeySet();
+    private ScheduledExecutorService hibernationScheduler;
 
     @Getter
     private ReentrantLock loadingLock = new ReentrantLock();
+    private final Object loadingMonitor = new Object();
+    // guarded by loadingMonitor
+    private final LoadingGate loadingGate = new LoadingGate();
+    private final Map<String, LoadingGate> pluginLoadingGates = new HashMap<>();
+    // refreshes deferred to the end of outermost batch, guarded by itself
+    private final Map<Object, Runnable> deferredRefreshes = new LinkedHashMap<>();
+    private int batchDepth;
+    // refreshes deferred to the end of preparing plugins on current thread
+    private final ThreadLocal<Map<Object, Runnable>> preparingRefreshes = new ThreadLocal<>();
+    // set on plugin starting workers, which load plugins for the thread holding loadingLock
+    private final ThreadLocal<Boolean> loadingWorker = new ThreadLocal<>();
 
     public SpringBootPluginManager() {
         super();
@@ -84,6 +148,145 @@ public class SpringBootPluginManager extends DefaultPluginManager
         return pluginRepository;
     }
 
+    /**
+     * Watch plugins root for changes, so {@link #getPluginInventory()} doesn't check
+     * plugin files on every read. Default true.
+     */
+    public void setWatchPluginsRoot(boolean watchPluginsRoot) {
+        this.watchPluginsRoot = watchPluginsRoot;
+    }
+
+    /**
+     * @return cached descriptors of plugins on disk, loaded or not.
+     */
+    public PluginInventory getPluginInventory() {
+        if (pluginInventory == null) {
+            synchronized (this) {
+                if (pluginInventory == null) {
+                    PluginInventory inventory = new PluginInventory(
+                        pluginRepository, getPluginDescriptorFinder(), getPluginsRoots());
+                    if (watchPluginsRoot) inventory.watch();
+                    pluginInventory = inventory;
+                }
+            }
+        }
+        return pluginInventory;
+    }
+
+    @Override
+    protected PluginWrapper loadPluginFromPath(Path pluginPath) {
+        long ts = System.currentTimeMillis();
+        try {
+            PluginWrapper pluginWrapper = super.loadPluginFromPath(pluginPath);
+            if (pluginWrapper != null) {
+                pluginLoadingMillis.put(pluginWrapper.getPluginId(), System.currentTimeMillis() - ts);
+            }
+            return pluginWrapper;
+        } finally {
+            pluginsRevision.incrementAndGet();
+        }
+    }
+
+    @Override
+    protected boolean unloadPlugin(String pluginId, boolean unloadDependents) {
+        ClassLoader pluginClassLoader = getPluginClassLoader(pluginId);
+        try {
+            return super.unloadPlugin(pluginId, unloadDependents);
+        } finally {
+            sharedBeanProxyCache.evict(pluginClassLoader);
+            if (classLoaderLeakDetector != null && getPlugin(pluginId) == null) {
+                classLoaderLeakDetector.track(pluginId, pluginClassLoader);
+            }
+            if (getPlugin(pluginId) == null && !reloadingPluginIds.contains(pluginId)) {
+                releaseRequestMappings(pluginId);
+            }
+            clearHibernated(pluginId);
+            failedActivations.remove(pluginId);
+            lastAccessTimes.remove(pluginId);
+            pluginLoadingMillis.remove(pluginId);
+            startupReports.remove(pluginId);
+            pluginsRevision.incrementAndGet();
+        }
+    }
+
+    private void releaseRequestMappings(String pluginId) {
+        if (mainApplicationContext == null) return;
+        try {
+            Object mapping = mainApplicationContext.getBean("requestMappingHandlerMapping");
+            if (mapping instanceof PluginRequestMappingAdapter) {
+                ((PluginRequestMappingAdapter) mapping).releasePluginMappings(pluginId);
+            }
+        } catch (BeansException ignored) {}
+    }
+
+    /**
+     * Plugins might be started in parallel, only bootstrapping of their own ApplicationContext
+     * is thread safe. Registering plugin resources to main ApplicationContext, e.g. by
+     * {@link IPluginConfigurer#onStart} or extensions, should be done holding this monitor.
+     */
+    public Object getMainContextMonitor() {
+        return mainContextMonitor;
+    }
+
+    public SharedBeanProxyCache getSharedBeanProxyCache() {
+        return sharedBeanProxyCache;
+    }
+
+    /**
+     * Class loaders of unloaded plugins are reported as leaked if still reachable after
+     * given grace period. Null to disable leak detection.
+     */
+    public void setLeakDetectionGracePeriod(Duration gracePeriod) {
+        this.classLoaderLeakDetector = isTimeoutSet(gracePeriod)
+            ? new PluginClassLoaderLeakDetector(gracePeriod, sharedBeanProxyCache) : null;
+    }
+
+    /**
+     * @return null if leak detection is disabled.
+     */
+    public PluginClassLoaderLeakDetector getClassLoaderLeakDetector() {
+        return classLoaderLeakDetector;
+    }
+
+    public AutoConfigurationConditionCache getAutoConfigurationConditionCache() {
+        if (autoConfigurationConditionCache == null) {
+            synchronized (this) {
+                if (autoConfigurationConditionCache == null) {
+                    ClassLoader mainClassLoader = mainApplicationContext != null
+                        ? mainApplicationContext.getClassLoader() : getClass().getClassLoader();
+                    autoConfigurationConditionCache = new AutoConfigurationConditionCache(mainClassLoader);
+                }
+            }
+        }
+        return autoConfigurationConditionCache;
+    }
+
+    /**
+     * @return a number changed every time a plugin is loaded or unloaded, so
+     * class loading caches could tell whether they are still valid.
+     */
+    public long getPluginsRevision() {
+        return pluginsRevision.get();
+    }
+
+    /**
+     * @return a number changed every time state, hibernation or starting error of
+     * a plugin is changed, so plugin listing could tell whether it's still valid.
+     */
+    public long getPluginStatesRevision() {
+        return pluginStatesRevision.get();
+    }
+
+    @Override
+    protected void firePluginStateEvent(PluginStateEvent event) {
+        // hibernated dependencies might be started along with the plugin woken up
+        if (event.getPluginState() == PluginState.STARTED) {
+            hibernatedPluginIds.remove(event.getPlugin().getPluginId());
+        }
+        pluginStatesRevision.incrementAndGet();
+        super.firePluginStateEvent(event);
+    }
+
     public void setAutoStartPlugin(boolean autoStartPlugin) {
         this.autoStartPlugin = autoStartPlugin;
     }
@@ -92,6 +295,18 @@ public class SpringBootPluginManager extends DefaultPluginManager
         return autoStartPlugin;
     }
 
+    /**
+     * Pool size to start plugins in parallel. Plugins are started one by one
+     * if it is less than 2.
+     */
+    public void setPluginStartingThreads(int pluginStartingThreads) {
+        this.pluginStartingThreads = pluginStartingThreads;
+    }
+
+    public int getPluginStartingThreads() {
+        return pluginStartingThreads;
+    }
+
     public void setMainApplicationStarted(boolean mainApplicationStarted) {
         this.mainApplicationStarted = mainApplicationStarted;
     }
@@ -129,58 +344,699 @@ public class SpringBootPluginManager extends DefaultPluginManager
      */
     @Override
     public void afterPropertiesSet() {
-        if (this.autoStartPlugin) loadingLock.lock();
+        if (this.autoStartPlugin) lockLoading();
         loadPlugins();
    }
 
+    @Override
+    public void destroy() {
+        if (pluginInventory != null) pluginInventory.close();
+        if (classLoaderLeakDetector != null) classLoaderLeakDetector.close();
+        // kept as shut down, so they are not created again
+        synchronized (this) {
+            if (hibernationScheduler != null) hibernationScheduler.shutdownNow();
+            if (activationExecutor != null) activationExecutor.shutdownNow();
+        }
+    }
+
     public PluginStartingError getPluginStartingError(String pluginId) {
         return startingErrors.get(pluginId);
     }
 
+    private void putStartingError(String pluginId, PluginStartingError startingError) {
+        startingErrors.put(pluginId, startingError);
+        pluginStatesRevision.incrementAndGet();
+    }
+
+    /**
+     * @return milliseconds of loading plugin, mostly spent on creating plugin class loader,
+     * or -1 if unknown.
+     */
+    public long getPluginLoadingMillis(String pluginId) {
+        return pluginLoadingMillis.getOrDefault(pluginId, -1L);
+    }
+
+    public void setPluginStartupReport(PluginStartupReport report) {
+        startupReports.put(report.pluginId, report);
+    }
+
+    /**
+     * @return startup time breakdown of last start of given plugin, or null if it's
+     * not started yet.
+     */
+    public PluginStartupReport getPluginStartupReport(String pluginId) {
+        return startupReports.get(pluginId);
+    }
+
+    public List<PluginStartupReport> getPluginStartupReports() {
+        return new ArrayList<>(startupReports.values());
+    }
+
+    //*************************************************************************
+    // Lazy Activation
+    //*************************************************************************
+
+    /**
+     * Plugins declaring path prefixes are not started with others, but on first
+     * request to their prefixes, see {@link PluginPathPrefixes}.
+     */
+    public void setLazyActivation(boolean lazyActivation) {
+        this.lazyActivation = lazyActivation;
+    }
+
+    public boolean isLazyActivation() {
+        return lazyActivation;
+    }
+
+    /**
+     * Plugins activated lazily are hibernated if not requested for this duration.
+     * Null to apply {@link #setHibernationIdleTimeout(Duration)}.
+     */
+    public void setActivationIdleTimeout(Duration activationIdleTimeout) {
+        this.activationIdleTimeout = activationIdleTimeout;
+    }
+
+    /**
+     * Activation failed is not retried by requests or extension lookups within this
+     * duration.
+     */
+    public void setActivationRetryBackoff(Duration activationRetryBackoff) {
+        this.activationRetryBackoff = activationRetryBackoff != null
+            ? activationRetryBackoff : DEFAULT_ACTIVATION_RETRY_BACKOFF;
+    }
+
+    /**
+     * @return path prefixes of plugins activated on first request, by plugin id.
+     */
+    public Map<String, List<String>> getLazyPlugins() {
+        return lazyPlugins;
+    }
+
+    /**
+     * @return id of the lazy plugin serving given request path, by the longest
+     * matched prefix, or null if it's not served by lazy plugins.
+     */
+    public String getLazyPluginId(String path) {
+        String pluginId = null;
+        int matchedLength = -1;
+        for (Map.Entry<String, List<String>> entry : lazyPlugins.entrySet()) {
+            for (String prefix : entry.getValue()) {
+                if (prefix.length() > matchedLength && PluginPathPrefixes.matches(prefix, path)) {
+                    pluginId = entry.getKey();
+                    matchedLength = prefix.length();
+                }
+            }
+        }
+        return pluginId;
+    }
+
+    /**
+     * @return true if the plugin could be started by a request or extension lookup:
+     * lazy plugins never started, hibernated plugins, and plugins failed on activation
+     * once retry backoff is elapsed. Plugins stopped by admin, or failed otherwise,
+     * are left as they are.
+     */
+    public boolean isActivatable(String pluginId) {
+        PluginWrapper plugin = getPlugin(pluginId);
+        if (plugin == null) return false;
+        PluginState pluginState = plugin.getPluginState();
+        if (pluginState == PluginState.RESOLVED) return true;
+        if (pluginState == PluginState.STOPPED) return isHibernated(pluginId);
+        if (pluginState == PluginState.FAILED) {
+            return failedActivations.containsKey(pluginId) && getActivationRetryDelay(pluginId) == 0;
+        }
+        return false;
+    }
+
+    /**
+     * @return milliseconds to wait before failed activation of the plugin is retried,
+     * 0 if it's not failed on activation or backoff is elapsed.
+     */
+    public long getActivationRetryDelay(String pluginId) {
+        Long failedAt = failedActivations.get(pluginId);
+        if (failedAt == null) return 0;
+        return Math.max(0, failedAt + activationRetryBackoff.toMillis() - System.currentTimeMillis());
+    }
+
+    /**
+     * Start a lazy or hibernated plugin if it's not started yet, see {@link #isActivatable(String)}.
+     * Concurrent activations of the same plugin share one starting, cancelling the
+     * returned future doesn't cancel the starting.
+     *
+     * @return future completed with plugin state after starting, or current state if
+     * the plugin is not activatable.
+     */
+    public CompletableFuture<PluginState> activatePlugin(String pluginId) {
+        touchPlugin(pluginId);
+        PluginWrapper plugin = getPlugin(pluginId);
+        if (plugin == null || plugin.getPluginState() == PluginState.STARTED
+                || (!activations.containsKey(pluginId) && !isActivatable(pluginId))) {
+            return CompletableFuture.completedFuture(plugin != null ? plugin.getPluginState() : null);
+        }
+        if (isLoadingByCurrentThread()) {
+            // activator would wait for the loading lock held by this thread, e.g. extension
+            // lookup in plugin starting or state changed listeners, start it here instead.
+            CompletableFuture<PluginState> future = new CompletableFuture<>();
+            try {
+                future.complete(doActivatePlugin(pluginId));
+            } catch (RuntimeException | Error e) {
+                future.completeExceptionally(e);
+            }
+            return future;
+        }
+        CompletableFuture<PluginState> future = activations.computeIfAbsent(pluginId,
+            id -> CompletableFuture.supplyAsync(() -> doActivatePlugin(id), getActivationExecutor()));
+        future.whenComplete((state, ex) -> activations.remove(pluginId, future));
+        // return a dependent future, so callers cancelling it don't affect other waiters
+        return future.thenApply(state -> state);
+    }
+
+    private boolean isLoadingByCurrentThread() {
+        return loadingLock.isHeldByCurrentThread() || loadingWorker.get() != null;
+    }
+
+    private PluginState doActivatePlugin(String pluginId) {
+        long ts = System.currentTimeMillis();
+        boolean hibernated = isHibernated(pluginId);
+        PluginState pluginState = null;
+        try {
+            pluginState = loadingWorker.get() != null ? doStartPluginOnWorker(pluginId) : startPlugin(pluginId);
+        } finally {
+            if (pluginState == PluginState.STARTED) {
+                failedActivations.remove(pluginId);
+            } else {
+                // requests don't retry it until backoff is elapsed
+                failedActivations.put(pluginId, System.currentTimeMillis());
+            }
+        }
+        if (pluginState == PluginState.STARTED) {
+            log.info("[SBP] Plugin {} is {} in {}ms", pluginId,
+                hibernated ? "woken up" : "activated", System.currentTimeMillis() - ts);
+        } else {
+            log.warn("[SBP] Plugin {} is not {}, retry after {}", pluginId,
+                hibernated ? "woken up" : "activated", activationRetryBackoff);
+        }
+        return pluginState;
+    }
+
+    /**
+     * Record a request or extension lookup of the plugin, which keeps it from hibernation.
+     */
+    public void touchPlugin(String pluginId) {
+        lastAccessTimes.put(pluginId, System.currentTimeMillis());
+    }
+
+    private synchronized ExecutorService getActivationExecutor() {
+        if (activationExecutor == null) {
+            // activations are coalesced per plugin, so threads are bounded by plugins count.
+            // A plugin activating might wake up another one by extension lookup.
+            activationExecutor = Executors.newCachedThreadPool(daemonThreadFactory("sbp-plugin-activator-"));
+        }
+        return activationExecutor;
+    }
+
+    private static CustomizableThreadFactory daemonThreadFactory(String threadNamePrefix) {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory(threadNamePrefix);
+        threadFactory.setDaemon(true);
+        return threadFactory;
+    }
+
+    private Map<String, List<String>> resolveLazyPlugins() {
+        Map<String, List<String>> candidates = new LinkedHashMap<>();
+        for (PluginWrapper plugin : resolvedPlugins) {
+            List<String> prefixes = PluginPathPrefixes.read(plugin.getPluginPath());
+            if (!prefixes.isEmpty()) candidates.put(plugin.getPluginId(), prefixes);
+        }
+        // plugins required by eagerly started plugins must be started eagerly as well
+        boolean changed = true;
+        while (changed) {
+            changed = candidates.keySet().removeIf(pluginId -> dependencyResolver.getDependents(pluginId)
+                .stream().anyMatch(dependent -> !candidates.containsKey(dependent)));
+        }
+        return Collections.unmodifiableMap(candidates);
+    }
+
+    //*************************************************************************
+    // Hibernation
+    //*************************************************************************
+
+    /**
+     * Started plugins are hibernated if not requested for this duration. Null
+     * to disable hibernation.
+     */
+    public void setHibernationIdleTimeout(Duration hibernationIdleTimeout) {
+        this.hibernationIdleTimeout = hibernationIdleTimeout;
+    }
+
+    /**
+     * Customize which idle plugins should be hibernated. By default plugins are
+     * hibernated once idle timeout is exceeded.
+     */
+    public void setHibernationPolicy(PluginHibernationPolicy hibernationPolicy) {
+        this.hibernationPolicy = hibernationPolicy;
+    }
+
+    public boolean isHibernationEnabled() {
+        return isTimeoutSet(hibernationIdleTimeout)
+            || (!lazyPlugins.isEmpty() && isTimeoutSet(activationIdleTimeout));
+    }
+
+    /**
+     * @return true if the plugin is stopped by hibernation, and will be started
+     * on next request or extension lookup.
+     */
+    public boolean isHibernated(String pluginId) {
+        return hibernatedPluginIds.contains(pluginId);
+    }
+
+    public Set<String> getHibernatedPluginIds() {
+        return Collections.unmodifiableSet(hibernatedPluginIds);
+    }
+
+    private void clearHibernated(String pluginId) {
+        if (hibernatedPluginIds.remove(pluginId)) pluginStatesRevision.incrementAndGet();
+    }
+
+    /**
+     * Stop a started plugin, and start it again on next request or extension lookup.
+     */
+    public PluginState hibernatePlugin(String pluginId) {
+        List<String> loadingPluginIds = lockLoading(pluginId);
+        try {
+            PluginWrapper plugin = getPlugin(pluginId);
+            // marked before stopped, so it's activatable once stopped, and state
+            // changed listeners see it hibernated
+            if (plugin != null && plugin.getPluginState() == PluginState.STARTED
+                    && hibernatedPluginIds.add(pluginId)) {
+                pluginStatesRevision.incrementAndGet();
+            }
+            PluginState pluginState = doStopPlugin(pluginId, true);
+            if (pluginState != PluginState.STOPPED) clearHibernated(pluginId);
+            return pluginState;
+        } finally {
+            unlockLoading(loadingPluginIds);
+        }
+    }
+
+    @Override
+    public <T> List<T> getExtensions(Class<T> type) {
+        wakeHibernatedPlugins(type, null);
+        return super.getExtensions(type);
+    }
+
+    @Override
+    public <T> List<T> getExtensions(Class<T> type, String pluginId) {
+        wakeHibernatedPlugins(type, pluginId);
+        if (pluginId != null) touchPlugin(pluginId);
+        return super.getExtensions(type, pluginId);
+    }
+
+    private void wakeHibernatedPlugins(Class<?> type, String pluginId) {
+        if (hibernatedPluginIds.isEmpty()) return;
+        for (String hibernatedPluginId : new ArrayList<>(hibernatedPluginIds)) {
+            if (pluginId != null && !pluginId.equals(hibernatedPluginId)) continue;
+            if (!providesExtension(hibernatedPluginId, type)) continue;
+            activatePlugin(hibernatedPluginId).join();
+        }
+    }
+
+    private boolean providesExtension(String pluginId, Class<?> type) {
+        PluginWrapper plugin = getPlugin(pluginId);
+        if (plugin == null) return false;
+        for (String extensionClassName : getExtensionClassNames(pluginId)) {
+            try {
+                if (type.isAssignableFrom(plugin.getPluginClassLoader().loadClass(extensionClassName))) return true;
+            } catch (ClassNotFoundException | LinkageError ignored) {}
+        }
+        return false;
+    }
+
+    private boolean isIdleTimeout(PluginWrapper plugin, long idleMillis) {
+        Duration timeout = lazyPlugins.containsKey(plugin.getPluginId()) && activationIdleTimeout != null
+            ? activationIdleTimeout : hibernationIdleTimeout;
+        return isTimeoutSet(timeout) && idleMillis >= timeout.toMillis();
+    }
+
+    private static boolean isTimeoutSet(Duration timeout) {
+        return timeout != null && !timeout.isZero() && !timeout.isNegative();
+    }
+
+    private synchronized void scheduleHibernation() {
+        if (hibernationScheduler != null || !isHibernationEnabled()) return;
+        Duration timeout = isTimeoutSet(hibernationIdleTimeout) ? hibernationIdleTimeout : activationIdleTimeout;
+        if (isTimeoutSet(activationIdleTimeout) && activationIdleTimeout.compareTo(timeout) < 0) {
+            timeout = activationIdleTimeout;
+        }
+        hibernationScheduler = Executors.newSingleThreadScheduledExecutor(
+            daemonThreadFactory("sbp-plugin-hibernation-"));
+        long period = Math.max(1000, Math.min(timeout.toMillis() / 2, 60_000));
+        hibernationScheduler.scheduleWithFixedDelay(this::hibernateIdlePlugins, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    private void hibernateIdlePlugins() {
+        long now = System.currentTimeMillis();
+        for (PluginWrapper plugin : getPlugins(PluginState.STARTED)) {
+            String pluginId = plugin.getPluginId();
+            // plugins started before first check are idle since then
+            Long lastAccessTime = lastAccessTimes.putIfAbsent(pluginId, now);
+            if (lastAccessTime == null || isLoading(pluginId)) continue;
+            if (!hibernationPolicy.shouldHibernate(plugin, now - lastAccessTime)) continue;
+            // don't hibernate plugins still used by others
+            boolean required = dependencyResolver.getDependents(pluginId).stream()
+                .map(this::getPlugin)
+                .anyMatch(dependent -> dependent != null && dependent.getPluginState() == PluginState.STARTED);
+            if (required) continue;
+            try {
+                hibernatePlugin(pluginId);
+                log.info("[SBP] Plugin {} is hibernated after idle for {}s", pluginId, (now - lastAccessTime) / 1000);
+            } catch (Exception e) {
+                log.warn("Failed to hibernate plugin {}", pluginId, e);
+            }
+        }
+    }
+
     //*************************************************************************
     // Plugin State Manipulation
     //*************************************************************************
 
+    /**
+     * @return true if all plugins are loading, e.g. on startup or reloading all plugins.
+     */
     public boolean isLoading() {
-        return loadingLock.isLocked();
+        synchronized (loadingMonitor) {
+            return loadingGate.isLoading();
+        }
+    }
+
+    /**
+     * @return true if given plugin is loading, either alone or along with all plugins.
+     */
+    public boolean isLoading(String pluginId) {
+        synchronized (loadingMonitor) {
+            return loadingGate.isLoading() || pluginLoadingGates.containsKey(pluginId);
+        }
+    }
+
+    /**
+     * @return ids of plugins being loaded individually, e.g. by {@link #reloadPlugins(String)}.
+     */
+    public Set<String> getLoadingPluginIds() {
+        synchronized (loadingMonitor) {
+            return pluginLoadingGates.isEmpty()
+                ? Collections.emptySet() : new HashSet<>(pluginLoadingGates.keySet());
+        }
     }
 
     public void releaseLoadingLock() {
+        unlockLoading();
+    }
+
+    /**
+     * @return a future that completes once plugins loading is done. It is already
+     * completed if plugins are not loading.
+     */
+    public CompletableFuture<Void> whenLoaded() {
+        // return a dependent future, so callers cancelling it don't affect the gate
+        synchronized (loadingMonitor) {
+            return loadingGate.future.thenApply(v -> v);
+        }
+    }
+
+    /**
+     * @return a future that completes once given plugin loading is done.
+     */
+    public CompletableFuture<Void> whenLoaded(String pluginId) {
+        synchronized (loadingMonitor) {
+            LoadingGate gate = pluginLoadingGates.get(pluginId);
+            if (gate == null) return loadingGate.future.thenApply(v -> v);
+            return CompletableFuture.allOf(loadingGate.future, gate.future);
+        }
+    }
+
+    /**
+     * Park current thread until plugins loading is done.
+     *
+     * @return false if plugins are still loading after waiting for given timeout.
+     */
+    public boolean awaitLoaded(long timeout, TimeUnit unit) throws InterruptedException {
+        return await(whenLoaded(), timeout, unit);
+    }
+
+    /**
+     * Park current thread until given plugin loading is done.
+     *
+     * @return false if plugin is still loading after waiting for given timeout.
+     */
+    public boolean awaitLoaded(String pluginId, long timeout, TimeUnit unit) throws InterruptedException {
+        return await(whenLoaded(pluginId), timeout, unit);
+    }
+
+    private boolean await(CompletableFuture<Void> future, long timeout, TimeUnit unit) throws InterruptedException {
+        try {
+            future.get(timeout, unit);
+            return true;
+        } catch (TimeoutException e) {
+            return false;
+        } catch (ExecutionException e) {
+            // never completed exceptionally
+            return true;
+        }
+    }
+
+    private void lockLoading() {
+        loadingLock.lock();
+        synchronized (loadingMonitor) {
+            loadingGate.enter();
+        }
+    }
+
+    private void unlockLoading() {
+        // unlock first, so unbalanced unlocking fails before touching loading gate
         loadingLock.unlock();
+        synchronized (loadingMonitor) {
+            loadingGate.exit();
+        }
     }
 
-    private void doStartPlugins() {
+    /**
+     * Lock loading for given plugin and plugins depending on it, since they are
+     * stopped along with it. Other plugins and main app keep serving.
+     */
+    private List<String> lockLoading(String pluginId) {
+        return lockLoading(Collections.singleton(pluginId));
+    }
+
+    private List<String> lockLoading(Collection<String> pluginIdsToLock) {
         loadingLock.lock();
+        List<String> pluginIds = getPluginAndDependentIds(pluginIdsToLock);
+        synchronized (loadingMonitor) {
+            pluginIds.forEach(id -> pluginLoadingGates.computeIfAbsent(id, k -> new LoadingGate()).enter());
+        }
+        return pluginIds;
+    }
+
+    private void unlockLoading(List<String> pluginIds) {
+        loadingLock.unlock();
+        synchronized (loadingMonitor) {
+            pluginIds.forEach(id -> {
+                LoadingGate gate = pluginLoadingGates.get(id);
+                if (gate != null && gate.exit()) pluginLoadingGates.remove(id);
+            });
+        }
+    }
+
+    private List<String> getPluginAndDependentIds(Collection<String> pluginIdsToVisit) {
+        Set<String> pluginIds = new LinkedHashSet<>();
+        Deque<String> toVisit = new ArrayDeque<>(pluginIdsToVisit);
+        while (!toVisit.isEmpty()) {
+            String id = toVisit.poll();
+            if (pluginIds.add(id)) toVisit.addAll(dependencyResolver.getDependents(id));
+        }
+        return new ArrayList<>(pluginIds);
+    }
+
+    private static class LoadingGate {
+        private int depth;
+        private CompletableFuture<Void> future = CompletableFuture.completedFuture(null);
+
+        boolean isLoading() {
+            return depth > 0;
+        }
+
+        void enter() {
+            if (depth++ == 0) future = new CompletableFuture<>();
+        }
+
+        /**
+         * @return true if the outermost loading is done
+         */
+        boolean exit() {
+            if (--depth > 0) return false;
+            future.complete(null);
+            return true;
+        }
+    }
+
+    private void doStartPlugins() {
+        lockLoading();
         long ts = System.currentTimeMillis();
 
+        if (lazyActivation) {
+            lazyPlugins = resolveLazyPlugins();
+            if (!lazyPlugins.isEmpty()) {
+                log.info("[SBP] {} plugins will be activated on first request: {}",
+                        lazyPlugins.size(), lazyPlugins.keySet());
+            }
+        }
+        scheduleHibernation();
+
+        List<PluginWrapper> pluginsToStart = new ArrayList<>();
         for (PluginWrapper pluginWrapper : resolvedPlugins) {
             PluginState pluginState = pluginWrapper.getPluginState();
+            if (lazyPlugins.containsKey(pluginWrapper.getPluginId())) continue;
             if ((PluginState.DISABLED != pluginState) && (PluginState.STARTED != pluginState)) {
                 if (pluginWrapper.getPlugin() == null) {
-                    loadingLock.unlock();
+                    unlockLoading();
                     throw new IllegalArgumentException("pluginId " + pluginWrapper.getPluginId() + " doesn't existed.");
                 }
-                try {
-                    pluginWrapper.getPlugin().start();
+                pluginsToStart.add(pluginWrapper);
+            }
+        }
+
+        preparePlugins(pluginsToStart);
+        if (pluginStartingThreads > 1 && pluginsToStart.size() > 1) {
+            doStartPluginsInParallel(pluginsToStart);
+        } else {
+            pluginsToStart.forEach(this::doStartPluginWrapper);
+        }
+        if (hibernatedPluginIds.removeIf(pluginId ->
+                getPlugin(pluginId) == null || getPlugin(pluginId).getPluginState() == PluginState.STARTED)) {
+            pluginStatesRevision.incrementAndGet();
+        }
+
+        log.info("[SBP] {} plugins are started in {}ms. {} failed", getPlugins(PluginState.STARTED).size(),
+                System.currentTimeMillis() - ts, startingErrors.size());
+        log.debug("[SBP] {} shared bean proxy classes generated, {} reused, saved ~{}ms and ~{}KB metaspace",
+                sharedBeanProxyCache.getGeneratedCount(), sharedBeanProxyCache.getReusedCount(),
+                sharedBeanProxyCache.getEstimatedSavedMillis(), sharedBeanProxyCache.getEstimatedSavedBytes() / 1024);
+    }
+
+    /**
+     * Start plugins on a bounded executor. A plugin is scheduled only after
+     * all of its dependencies are done starting, whether they succeeded or not,
+     * which is the same order as starting them one by one. Worker threads use
+     * context class loader of calling thread.
+     */
+    private void doStartPluginsInParallel(List<PluginWrapper> pluginsToStart) {
+        ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(pluginStartingThreads, pluginsToStart.size()),
+                daemonThreadFactory("sbp-plugin-starter-"));
+        try {
+            Map<String, CompletableFuture<Void>> startingFutures = new HashMap<>();
+            // resolvedPlugins is sorted by dependencies, so futures of dependencies are always created first.
+            for (PluginWrapper pluginWrapper : pluginsToStart) {
+                CompletableFuture<?>[] dependencyFutures = pluginWrapper.getDescriptor().getDependencies().stream()
+                        .map(dependency -> startingFutures.get(dependency.getPluginId()))
+                        .filter(Objects::nonNull)
+                        .toArray(CompletableFuture[]::new);
+                startingFutures.put(pluginWrapper.getPluginId(), CompletableFuture.allOf(dependencyFutures)
+                        .thenRunAsync(() -> {
+                            Thread thread = Thread.currentThread();
+                            ClassLoader originalClassLoader = thread.getContextClassLoader();
+                            thread.setContextClassLoader(contextClassLoader);
+                            loadingWorker.set(Boolean.TRUE);
+                            try {
+                                doStartPluginWrapper(pluginWrapper);
+                            } finally {
+                                loadingWorker.remove();
+                                thread.setContextClassLoader(originalClassLoader);
+                            }
+                        }, executor));
+            }
+            try {
+                CompletableFuture.allOf(startingFutures.values().toArray(new CompletableFuture[0])).join();
+            } catch (CompletionException e) {
+                // only Errors escape doStartPluginWrapper, rethrow as if plugins were started one by one
+                if (e.getCause() instanceof Error) throw (Error) e.getCause();
+                if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+                throw e;
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private void doStartPluginWrapper(PluginWrapper pluginWrapper) {
+        synchronized (pluginWrapper) {
+            // might be woken up by extension lookup of plugins started concurrently
+            if (pluginWrapper.getPluginState() == PluginState.STARTED) return;
+            PluginState pluginState = pluginWrapper.getPluginState();
+            String failedDependency = getFailedDependency(pluginWrapper);
+            if (failedDependency != null) {
+                log.error("Skip starting plugin '{}', its dependency '{}' is failed",
+                        pluginWrapper.getPluginId(), failedDependency);
+                pluginWrapper.setPluginState(PluginState.FAILED);
+                putStartingError(pluginWrapper.getPluginId(), PluginStartingError.of(pluginWrapper.getPluginId(),
+                        "Dependency " + failedDependency + " is failed", null));
+                return;
+            }
+            try {
+                pluginWrapper.getPlugin().start();
+                // plugins might be started concurrently, keep state, startedPlugins and events in step
+                synchronized (pluginStateMonitor) {
                     pluginWrapper.setPluginState(PluginState.STARTED);
                     startedPlugins.add(pluginWrapper);
 
                     firePluginStateEvent(new PluginStateEvent(this, pluginWrapper, pluginState));
-                } catch (Exception e) {
-                    log.error(e.getMessage(), e);
-                    startingErrors.put(pluginWrapper.getPluginId(), PluginStartingError.of(
-                            pluginWrapper.getPluginId(), e.getMessage(), e.toString()));
-                    SpringBootPlugin.releaseLegacyResources(pluginWrapper, mainApplicationContext);
                 }
+            } catch (Exception | LinkageError e) {
+                log.error(e.getMessage(), e);
+                pluginWrapper.setPluginState(PluginState.FAILED);
+                pluginWrapper.setFailedException(e);
+                putStartingError(pluginWrapper.getPluginId(), PluginStartingError.of(
+                        pluginWrapper.getPluginId(), e.getMessage(), e.toString()));
+                SpringBootPlugin.releaseLegacyResources(pluginWrapper, mainApplicationContext);
             }
         }
+    }
 
-        log.info("[SBP] {} plugins are started in {}ms. {} failed", getPlugins(PluginState.STARTED).size(),
-                System.currentTimeMillis() - ts, startingErrors.size());
+    /**
+     * Start plugin on a starting worker the same way as the plugins started in parallel,
+     * since loading lock is held by the thread it works for.
+     */
+    private PluginState doStartPluginOnWorker(String pluginId) {
+        List<PluginWrapper> pluginsToStart = getUnstartedPluginAndDependencies(pluginId);
+        // dependencies first
+        Collections.reverse(pluginsToStart);
+        preparePlugins(pluginsToStart);
+        pluginsToStart.forEach(this::doStartPluginWrapper);
+        PluginState pluginState = getPlugin(pluginId).getPluginState();
+        if (pluginState == PluginState.STARTED) {
+            clearHibernated(pluginId);
+            touchPlugin(pluginId);
+        }
+        publishPluginStateChanged();
+        return pluginState;
+    }
+
+    /**
+     * @return id of a required dependency failed to start, or null if none.
+     */
+    private String getFailedDependency(PluginWrapper pluginWrapper) {
+        for (PluginDependency dependency : pluginWrapper.getDescriptor().getDependencies()) {
+            if (dependency.isOptional()) continue;
+            PluginWrapper dependencyWrapper = getPlugin(dependency.getPluginId());
+            if (dependencyWrapper != null && dependencyWrapper.getPluginState() == PluginState.FAILED) {
+                return dependency.getPluginId();
+            }
+        }
+        return null;
     }
 
     private void doStopPlugins() {
         startingErrors.clear();
+        pluginStatesRevision.incrementAndGet();
         // stop started plugins in reverse order
         Collections.reverse(startedPlugins);
         Iterator<PluginWrapper> itr = startedPlugins.iterator();
@@ -197,7 +1053,7 @@ public class SpringBootPluginManager extends DefaultPluginManager
                     firePluginStateEvent(new PluginStateEvent(this, pluginWrapper, pluginState));
                 } catch (PluginRuntimeException e) {
                     log.error(e.getMessage(), e);
-                    startingErrors.put(pluginWrapper.getPluginId(), PluginStartingError.of(
+                    putStartingError(pluginWrapper.getPluginId(), PluginStartingError.of(
                             pluginWrapper.getPluginId(), e.getMessage(), e.toString()));
                 }
             }
@@ -208,14 +1064,15 @@ public class SpringBootPluginManager extends DefaultPluginManager
         PluginWrapper plugin = getPlugin(pluginId);
         PluginState previousState = plugin.getPluginState();
         try {
+            preparePlugins(getUnstartedPluginAndDependencies(pluginId));
             PluginState pluginState = super.startPlugin(pluginId);
             if (sendEvent && previousState != pluginState) {
-                mainApplicationContext.publishEvent(new SbpPluginStateChangedEvent(mainApplicationContext));
+                publishPluginStateChanged();
             }
             return pluginState;
         } catch (Exception e) {
             log.error(e.getMessage(), e);
-            startingErrors.put(plugin.getPluginId(), PluginStartingError.of(
+            putStartingError(plugin.getPluginId(), PluginStartingError.of(
                     plugin.getPluginId(), e.getMessage(), e.toString()));
             SpringBootPlugin.releaseLegacyResources(plugin, mainApplicationContext);
         }
@@ -231,12 +1088,12 @@ public class SpringBootPluginManager extends DefaultPluginManager
         try {
             PluginState pluginState = super.stopPlugin(pluginId);
             if (sendEvent && previousState != pluginState) {
-                mainApplicationContext.publishEvent(new SbpPluginStateChangedEvent(mainApplicationContext));
+                publishPluginStateChanged();
             }
             return pluginState;
         } catch (Exception e) {
             log.error(e.getMessage(), e);
-            startingErrors.put(plugin.getPluginId(), PluginStartingError.of(
+            putStartingError(plugin.getPluginId(), PluginStartingError.of(
                     plugin.getPluginId(), e.getMessage(), e.toString()));
         }
         return plugin.getPluginState();
@@ -244,71 +1101,89 @@ public class SpringBootPluginManager extends DefaultPluginManager
 
     @Override
     public void startPlugins() {
+        beginBatch();
         try {
             doStartPlugins();
-            mainApplicationContext.publishEvent(new SbpPluginStateChangedEvent(mainApplicationContext));
+            publishPluginStateChanged();
         } finally {
-            loadingLock.unlock();
+            endBatchAndUnlockLoading();
         }
     }
 
     @Override
     public PluginState startPlugin(String pluginId) {
+        List<String> loadingPluginIds = lockLoading(pluginId);
         try {
-            loadingLock.lock();
-            return doStartPlugin(pluginId, true);
+            PluginState pluginState = doStartPlugin(pluginId, true);
+            if (pluginState == PluginState.STARTED) {
+                clearHibernated(pluginId);
+                failedActivations.remove(pluginId);
+                touchPlugin(pluginId);
+            }
+            return pluginState;
         } finally {
-            loadingLock.unlock();
+            unlockLoading(loadingPluginIds);
         }
     }
 
     @Override
     public void stopPlugins() {
         try {
-            loadingLock.lock();
+            lockLoading();
+            beginBatch();
             doStopPlugins();
-            mainApplicationContext.publishEvent(new SbpPluginStateChangedEvent(mainApplicationContext));
+            hibernatedPluginIds.clear();
+            pluginStatesRevision.incrementAndGet();
+            publishPluginStateChanged();
         } finally {
-            loadingLock.unlock();
+            endBatchAndUnlockLoading();
         }
     }
 
     @Override
     public PluginState stopPlugin(String pluginId) {
+        List<String> loadingPluginIds = lockLoading(pluginId);
+        clearHibernated(pluginId);
         try {
-            loadingLock.lock();
             return doStopPlugin(pluginId, true);
         } finally {
-            loadingLock.unlock();
+            unlockLoading(loadingPluginIds);
         }
     }
 
     public void restartPlugins() {
         try {
-            loadingLock.lock();
+            lockLoading();
+            beginBatch();
             doStopPlugins();
             doStartPlugins();
         } finally {
-            loadingLock.unlock();
+            endBatchAndUnlockLoading();
         }
     }
 
     public PluginState restartPlugin(String pluginId) {
+        List<String> loadingPluginIds = lockLoading(pluginId);
+        beginBatch();
         try {
-            loadingLock.lock();
             PluginState pluginState = doStopPlugin(pluginId, false);
             if (pluginState != PluginState.STARTED) doStartPlugin(pluginId, false);
             doStartPlugin(pluginId, false);
-            mainApplicationContext.publishEvent(new SbpPluginStateChangedEvent(mainApplicationContext));
+            publishPluginStateChanged();
             return pluginState;
         } finally {
-            loadingLock.unlock();
+            try {
+                endBatch();
+            } finally {
+                unlockLoading(loadingPluginIds);
+            }
         }
     }
 
     public void reloadPlugins(boolean restartStartedOnly) {
         try {
-            loadingLock.lock();
+            lockLoading();
+            beginBatch();
             doStopPlugins();
             List<String> startedPluginIds = new ArrayList<>();
             getPlugins().forEach(plugin -> {
@@ -325,30 +1200,224 @@ public class SpringBootPluginManager extends DefaultPluginManager
                         doStartPlugin(pluginId, false);
                     }
                 });
-                mainApplicationContext.publishEvent(new SbpPluginStateChangedEvent(mainApplicationContext));
+                publishPluginStateChanged();
             } else {
                 startPlugins();
             }
         } finally {
-            loadingLock.unlock();
+            endBatchAndUnlockLoading();
         }
     }
 
     public PluginState reloadPlugins(String pluginId) {
+        List<String> loadingPluginIds = lockLoading(pluginId);
+        try {
+            return doReloadPlugin(pluginId, true);
+        } finally {
+            unlockLoading(loadingPluginIds);
+        }
+    }
+
+    private PluginState doReloadPlugin(String pluginId, boolean sendEvent) {
+        if (!doReloadPluginWithoutStarting(pluginId)) return null;
+        return doStartPlugin(pluginId, sendEvent);
+    }
+
+    private boolean doReloadPluginWithoutStarting(String pluginId) {
+        PluginWrapper plugin = getPlugin(pluginId);
+        // keep request mappings of reloading plugin, so requests to it are still held
+        reloadingPluginIds.add(pluginId);
         try {
-            loadingLock.lock();
-            PluginWrapper plugin = getPlugin(pluginId);
             doStopPlugin(pluginId, false);
             unloadPlugin(pluginId, false);
             try {
                 loadPlugin(plugin.getPluginPath());
+                return true;
             } catch (Exception ex) {
-                return null;
+                releaseRequestMappings(pluginId);
+                return false;
             }
+        } finally {
+            reloadingPluginIds.remove(pluginId);
+        }
+    }
+
+    private List<PluginWrapper> getUnstartedPluginAndDependencies(String pluginId) {
+        List<PluginWrapper> plugins = new ArrayList<>();
+        Set<String> visited = new HashSet<>();
+        Deque<String> toVisit = new ArrayDeque<>();
+        toVisit.add(pluginId);
+        while (!toVisit.isEmpty()) {
+            PluginWrapper plugin = getPlugin(toVisit.poll());
+            if (plugin == null || plugin.getPluginState() == PluginState.STARTED
+                || !visited.add(plugin.getPluginId())) continue;
+            plugins.add(plugin);
+            plugin.getDescriptor().getDependencies().forEach(dependency -> toVisit.add(dependency.getPluginId()));
+        }
+        return plugins;
+    }
+
+    //*************************************************************************
+    // Batch
+    //*************************************************************************
 
-            return doStartPlugin(pluginId, true);
+    /**
+     * Stop, reload and start plugins in one batch, in this order. Refreshes requested
+     * by {@link #deferRefresh(Object, Runnable)}, like publishing {@link SbpPluginStateChangedEvent},
+     * are run once at the end of the batch, instead of once for each plugin.
+     *
+     * @return plugin state after applied by plugin id, null if a plugin failed to reload.
+     */
+    public Map<String, PluginState> applyChanges(Collection<String> startPluginIds,
+                                                 Collection<String> stopPluginIds,
+                                                 Collection<String> reloadPluginIds) {
+        startPluginIds = startPluginIds != null ? startPluginIds : Collections.emptyList();
+        stopPluginIds = stopPluginIds != null ? stopPluginIds : Collections.emptyList();
+        reloadPluginIds = reloadPluginIds != null ? reloadPluginIds : Collections.emptyList();
+        Set<String> pluginIds = new LinkedHashSet<>();
+        pluginIds.addAll(stopPluginIds);
+        pluginIds.addAll(reloadPluginIds);
+        pluginIds.addAll(startPluginIds);
+        for (String pluginId : pluginIds) {
+            if (getPlugin(pluginId) == null) {
+                throw new IllegalArgumentException("pluginId " + pluginId + " doesn't existed.");
+            }
+        }
+
+        Map<String, PluginState> pluginStates = new LinkedHashMap<>();
+        List<String> loadingPluginIds = lockLoading(pluginIds);
+        beginBatch();
+        try {
+            for (String pluginId : stopPluginIds) {
+                clearHibernated(pluginId);
+                pluginStates.put(pluginId, doStopPlugin(pluginId, false));
+            }
+            List<String> pluginIdsToStart = new ArrayList<>();
+            for (String pluginId : reloadPluginIds) {
+                clearHibernated(pluginId);
+                if (doReloadPluginWithoutStarting(pluginId)) {
+                    pluginIdsToStart.add(pluginId);
+                } else {
+                    pluginStates.put(pluginId, null);
+                }
+            }
+            pluginIdsToStart.addAll(startPluginIds);
+            // prepare all at once, e.g. rebuild EntityManagerFactory once for all JPA plugins
+            preparePlugins(pluginIdsToStart.stream()
+                .flatMap(pluginId -> getUnstartedPluginAndDependencies(pluginId).stream())
+                .distinct()
+                .collect(Collectors.toList()));
+            for (String pluginId : pluginIdsToStart) {
+                PluginState pluginState = doStartPlugin(pluginId, false);
+                if (pluginState == PluginState.STARTED) {
+                    clearHibernated(pluginId);
+                    touchPlugin(pluginId);
+                }
+                pluginStates.put(pluginId, pluginState);
+            }
+            if (!pluginIds.isEmpty()) publishPluginStateChanged();
+        } finally {
+            try {
+                endBatch();
+            } finally {
+                unlockLoading(loadingPluginIds);
+            }
+        }
+        return pluginStates;
+    }
+
+    /**
+     * Call {@link org.laxture.sbp.spring.boot.IPluginConfigurer#onPrepare} of plugins
+     * about to start, which are not prepared yet. Refreshes requested by them are
+     * run once after all of them are prepared, and before any of them is started.
+     */
+    public void preparePlugins(Collection<PluginWrapper> plugins) {
+        if (preparingRefreshes.get() != null) {
+            doPreparePlugins(plugins);
+            return;
+        }
+        Map<Object, Runnable> refreshes = new LinkedHashMap<>();
+        preparingRefreshes.set(refreshes);
+        try {
+            doPreparePlugins(plugins);
+        } finally {
+            preparingRefreshes.remove();
+        }
+        runRefreshes(refreshes.values());
+    }
+
+    private void doPreparePlugins(Collection<PluginWrapper> plugins) {
+        for (PluginWrapper plugin : plugins) {
+            if (!(plugin.getPlugin() instanceof SpringBootPlugin)) continue;
+            try {
+                ((SpringBootPlugin) plugin.getPlugin()).prepare();
+            } catch (Exception e) {
+                // it will be prepared again on starting, and fail there
+                log.warn("Failed to prepare plugin {}", plugin.getPluginId(), e);
+            }
+        }
+    }
+
+    /**
+     * Run a refresh of main app after plugins changed, e.g. re-init router functions.
+     * It's deferred to the end of current batch if plugins are changed in batch, and
+     * refreshes of the same key are run only once. Otherwise it's run immediately.
+     */
+    public void deferRefresh(Object key, Runnable refresh) {
+        Map<Object, Runnable> preparing = preparingRefreshes.get();
+        if (preparing != null) {
+            preparing.putIfAbsent(key, refresh);
+            return;
+        }
+        synchronized (deferredRefreshes) {
+            if (batchDepth > 0) {
+                deferredRefreshes.putIfAbsent(key, refresh);
+                return;
+            }
+        }
+        refresh.run();
+    }
+
+    private void publishPluginStateChanged() {
+        deferRefresh(SbpPluginStateChangedEvent.class, () ->
+            mainApplicationContext.publishEvent(new SbpPluginStateChangedEvent(mainApplicationContext)));
+    }
+
+    private void beginBatch() {
+        synchronized (deferredRefreshes) {
+            batchDepth++;
+        }
+    }
+
+    private void endBatch() {
+        List<Runnable> refreshes;
+        synchronized (deferredRefreshes) {
+            if (--batchDepth > 0) return;
+            refreshes = new ArrayList<>(deferredRefreshes.values());
+            deferredRefreshes.clear();
+        }
+        runRefreshes(refreshes);
+    }
+
+    private void runRefreshes(Collection<Runnable> refreshes) {
+        long ts = System.currentTimeMillis();
+        for (Runnable refresh : refreshes) {
+            try {
+                refresh.run();
+            } catch (Exception e) {
+                log.error("Failed to refresh main app after plugins changed", e);
+            }
+        }
+        if (!refreshes.isEmpty()) {
+            log.debug("[SBP] {} deferred refreshes are run in {}ms", refreshes.size(), System.currentTimeMillis() - ts);
+        }
+    }
+
+    private void endBatchAndUnlockLoading() {
+        try {
+            endBatch();
         } finally {
-            loadingLock.unlock();
+            unlockLoading();
         }
     }
 
@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2019-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.laxture.sbp.internal;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.UrlResource;
+import org.springframework.core.io.support.PropertiesLoaderUtils;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.StringUtils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * `@ConditionalOnClass` outcomes of main app auto-configurations, shared by all
+ * plugin contexts.
+ * <p>
+ * Required classes are read from `spring-autoconfigure-metadata.properties`. Presence
+ * of a class in main app class loader is evaluated once and shared, since plugin class
+ * loader delegates to it. Only classes missing in main app are checked against plugin
+ * class loader, as plugin might provide them.
+ * <p>
+ * Auto-configurations not matched for a plugin are excluded by `spring.autoconfigure.exclude`
+ * in plugin context, so they are dropped before import filtering instead of being
+ * evaluated again by every plugin.
+ *
+ * @author <a href="https://github.com/hank-cp">Hank CP</a>
+ */
+@Slf4j
+public class AutoConfigurationConditionCache {
+
+    private static final String AUTO_CONFIGURATION_IMPORTS =
+        "META-INF/spring/org.springframework.boot.autoconfigure.AutoConfiguration.imports";
+    private static final String SPRING_FACTORIES = "META-INF/spring.factories";
+    private static final String ENABLE_AUTO_CONFIGURATION_KEY =
+        "org.springframework.boot.autoconfigure.EnableAutoConfiguration";
+    private static final String AUTO_CONFIGURE_METADATA =
+        "META-INF/spring-autoconfigure-metadata.properties";
+    private static final String CONDITIONAL_ON_CLASS = ".ConditionalOnClass";
+
+    private final ClassLoader mainClassLoader;
+
+    // auto-configuration -> classes required by @ConditionalOnClass
+    private final Map<String, String[]> requiredClasses;
+    // class name -> present in main app class loader
+    private final Map<String, Boolean> mainClassPresence = new ConcurrentHashMap<>();
+    // auto-configuration -> all required classes are present in main app class loader
+    private final Map<String, Boolean> matchedByMain = new ConcurrentHashMap<>();
+
+    public AutoConfigurationConditionCache(ClassLoader mainClassLoader) {
+        this.mainClassLoader = mainClassLoader;
+        this.requiredClasses = loadRequiredClasses(mainClassLoader);
+    }
+
+    /**
+     * @return auto-configurations of main app whose `@ConditionalOnClass` is not
+     * matched for given plugin class loader.
+     */
+    public Set<String> getUnmatchedAutoConfigurations(ClassLoader pluginClassLoader) {
+        long ts = System.currentTimeMillis();
+        Set<String> unmatched = new LinkedHashSet<>();
+        requiredClasses.forEach((autoConfiguration, classNames) -> {
+            if (matchedByMain.computeIfAbsent(autoConfiguration,
+                key -> Arrays.stream(classNames).allMatch(this::isPresentInMain))) return;
+            for (String className : classNames) {
+                if (isPresentInMain(className)) continue;
+                // plugin specific, evaluated locally
+                if (!ClassUtils.isPresent(className, pluginClassLoader)) {
+                    unmatched.add(autoConfiguration);
+                    break;
+                }
+            }
+        });
+        log.debug("Evaluated @ConditionalOnClass of {} auto-configurations in {}ms, {} not matched",
+            requiredClasses.size(), System.currentTimeMillis() - ts, unmatched.size());
+        return unmatched;
+    }
+
+    private boolean isPresentInMain(String className) {
+        return mainClassPresence.computeIfAbsent(className,
+            key -> ClassUtils.isPresent(key, mainClassLoader));
+    }
+
+    private static Map<String, String[]> loadRequiredClasses(ClassLoader classLoader) {
+        Set<String> candidates = loadCandidates(classLoader);
+        Map<String, String[]> requiredClasses = new LinkedHashMap<>();
+        try {
+            Enumeration<URL> urls = classLoader.getResources(AUTO_CONFIGURE_METADATA);
+            while (urls.hasMoreElements()) {
+                Properties metadata = PropertiesLoaderUtils.loadProperties(new UrlResource(urls.nextElement()));
+                for (String key : metadata.stringPropertyNames()) {
+                    if (!key.endsWith(CONDITIONAL_ON_CLASS)) continue;
+                    String autoConfiguration = key.substring(0, key.length() - CONDITIONAL_ON_CLASS.length());
+                    // only candidates could be excluded
+                    if (!candidates.contains(autoConfiguration)) continue;
+                    requiredClasses.put(autoConfiguration,
+                        StringUtils.commaDelimitedListToStringArray(metadata.getProperty(key)));
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Failed to load auto-configuration metadata, conditions are evaluated by each plugin", e);
+            return Collections.emptyMap();
+        }
+        return requiredClasses;
+    }
+
+    private static Set<String> loadCandidates(ClassLoader classLoader) {
+        Set<String> candidates = new HashSet<>();
+        try {
+            Enumeration<URL> urls = classLoader.getResources(AUTO_CONFIGURATION_IMPORTS);
+            while (urls.hasMoreElements()) {
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                        urls.nextElement().openStream(), StandardCharsets.UTF_8))) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        int comment = line.indexOf('#');
+                        if (comment >= 0) line = line.substring(0, comment);
+                        if (StringUtils.hasText(line)) candidates.add(line.trim());
+                    }
+                }
+            }
+            urls = classLoader.getResources(SPRING_FACTORIES);
+            while (urls.hasMoreElements()) {
+                Properties factories = PropertiesLoaderUtils.loadProperties(new UrlResource(urls.nextElement()));
+                String autoConfigurations = factories.getProperty(ENABLE_AUTO_CONFIGURATION_KEY);
+                if (autoConfigurations == null) continue;
+                for (String autoConfiguration : StringUtils.commaDelimitedListToStringArray(autoConfigurations)) {
+                    candidates.add(autoConfiguration.trim());
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Failed to load auto-configuration candidates", e);
+            return Collections.emptySet();
+        }
+        return candidates;
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2019-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.laxture.sbp.internal;
+
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.http.HttpHeaders;
+
+import java.io.File;
+
+/**
+ * Plugin static resource extracted to file system, so it could be served as a file.
+ * ETag is provided by content hash. It's weak since encoded variants served by
+ * `EncodedResourceResolver` copy headers of the original resource, and a strong
+ * ETag must differ between encodings.
+ *
+ * @author <a href="https://github.com/hank-cp">Hank CP</a>
+ */
+public class ExtractedPluginResource extends FileSystemResource implements
+    org.springframework.web.servlet.resource.HttpResource,
+    org.springframework.web.reactive.resource.HttpResource {
+
+    private final String pluginId;
+    private final String contentHash;
+
+    public ExtractedPluginResource(String pluginId, File file, String contentHash) {
+        super(file);
+        this.pluginId = pluginId;
+        this.contentHash = contentHash;
+    }
+
+    public String getPluginId() {
+        return pluginId;
+    }
+
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    @Override
+    public HttpHeaders getResponseHeaders() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setETag("W/\"" + contentHash + "\"");
+        return headers;
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2019-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.laxture.sbp.internal;
+
+import lombok.NonNull;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Match class/resource names against glob patterns, where `*` matches any
+ * characters and `?` matches zero or one character.
+ * <p>
+ * Patterns are compiled once: literal names go to a hash set, `prefix*` patterns
+ * go to a prefix trie, and the rest are compiled to regex which are only tried
+ * when the name starts with their literal prefix. Decisions are memorized, a quarter
+ * of them are evicted arbitrarily once memo is full.
+ *
+ * @author <a href="https://github.com/hank-cp">Hank CP</a>
+ */
+public class NamePatternMatcher {
+
+    private static final int MAX_MEMO_SIZE = 8192;
+
+    private final Set<String> literals = new HashSet<>();
+    private final TrieNode prefixes = new TrieNode();
+    private final List<PrefixedPattern> patterns = new ArrayList<>();
+    private final boolean empty;
+    private final Map<String, Boolean> memo = new ConcurrentHashMap<>();
+
+    public NamePatternMatcher(@NonNull List<String> globs) {
+        for (String glob : globs) {
+            int wildcard = indexOfWildcard(glob);
+            if (wildcard < 0) {
+                literals.add(glob);
+            } else if (wildcard == glob.length() - 1 && glob.charAt(wildcard) == '*') {
+                prefixes.add(glob.substring(0, wildcard));
+            } else {
+                patterns.add(new PrefixedPattern(glob.substring(0, wildcard), toRegex(glob)));
+            }
+        }
+        this.empty = globs.isEmpty();
+    }
+
+    public boolean matches(String name) {
+        if (empty) return false;
+        Boolean matched = memo.get(name);
+        if (matched != null) return matched;
+
+        matched = doMatch(name);
+        if (memo.size() >= MAX_MEMO_SIZE) evict();
+        memo.put(name, matched);
+        return matched;
+    }
+
+    private void evict() {
+        Iterator<String> itr = memo.keySet().iterator();
+        for (int i = 0; i < MAX_MEMO_SIZE / 4 && itr.hasNext(); i++) {
+            itr.next();
+            itr.remove();
+        }
+    }
+
+    /**
+     * @return count of memorized decisions
+     */
+    public int getMemoSize() {
+        return memo.size();
+    }
+
+    private boolean doMatch(String name) {
+        if (literals.contains(name)) return true;
+        if (prefixes.matchesPrefixOf(name)) return true;
+        for (PrefixedPattern pattern : patterns) {
+            if (name.startsWith(pattern.literalPrefix)
+                    && pattern.pattern.matcher(name).matches()) return true;
+        }
+        return false;
+    }
+
+    private static int indexOfWildcard(String glob) {
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '*' || c == '?') return i;
+        }
+        return -1;
+    }
+
+    private static Pattern toRegex(String glob) {
+        StringBuilder regex = new StringBuilder();
+        StringBuilder literal = new StringBuilder();
+        for (char c : glob.toCharArray()) {
+            if (c == '*' || c == '?') {
+                if (literal.length() > 0) {
+                    regex.append(Pattern.quote(literal.toString()));
+                    literal.setLength(0);
+                }
+                regex.append(c == '*' ? ".*?" : ".?");
+            } else {
+                literal.append(c);
+            }
+        }
+        if (literal.length() > 0) regex.append(Pattern.quote(literal.toString()));
+        return Pattern.compile(regex.toString());
+    }
+
+    private static class PrefixedPattern {
+        private final String literalPrefix;
+        private final Pattern pattern;
+
+        PrefixedPattern(String literalPrefix, Pattern pattern) {
+            this.literalPrefix = literalPrefix;
+            this.pattern = pattern;
+        }
+    }
+
+    private static class TrieNode {
+        private final Map<Character, TrieNode> children = new HashMap<>();
+        private boolean terminal;
+        private boolean hasTerminal;
+
+        void add(String prefix) {
+            hasTerminal = true;
+            TrieNode node = this;
+            for (int i = 0; i < prefix.length(); i++) {
+                node = node.children.computeIfAbsent(prefix.charAt(i), c -> new TrieNode());
+            }
+            node.terminal = true;
+        }
+
+        boolean matchesPrefixOf(String name) {
+            if (!hasTerminal) return false;
+            TrieNode node = this;
+            for (int i = 0; i < name.length(); i++) {
+                if (node.terminal) return true;
+                node = node.children.get(name.charAt(i));
+                if (node == null) return false;
+            }
+            return node.terminal;
+        }
+    }
+}
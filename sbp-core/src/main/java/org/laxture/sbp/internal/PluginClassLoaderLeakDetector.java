@@ -0,0 +1,365 @@
+/*
+ * Copyright (C) 2019-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.laxture.sbp.internal;
+
+import lombok.extern.slf4j.Slf4j;
+import org.laxture.sbp.spring.boot.PluginClassLoaderLeak;
+import org.laxture.spring.util.ApplicationContextProvider;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.ClassUtils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.sql.DriverManager;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Verify class loaders of unloaded plugins are garbage collected.
+ * <p>
+ * Released class loaders are held by {@link WeakReference}. One still reachable after
+ * grace period is reported as leaked, along with suspected holders: threads started
+ * by plugin or using it as context class loader, ThreadLocal values, JDBC drivers,
+ * {@link ApplicationContextProvider} entries, Jackson TypeFactory cache and
+ * {@link SharedBeanProxyCache} proxy classes.
+ * <p>
+ * ThreadLocals and registered JDBC drivers are only inspected if `java.base/java.lang`
+ * and `java.sql/java.sql` are opened to sbp by `--add-opens` on Java 9+.
+ *
+ * @author <a href="https://github.com/hank-cp">Hank CP</a>
+ */
+@Slf4j
+public class PluginClassLoaderLeakDetector {
+
+    private static final int MAX_DEPTH = 4;
+    private static final int MAX_ELEMENTS = 10_000;
+    private static final String JACKSON_TYPE_FACTORY = "com.fasterxml.jackson.databind.type.TypeFactory";
+    private static final String JDBC_DRIVER_SERVICE = "META-INF/services/java.sql.Driver";
+
+    private static final Field THREAD_LOCALS = accessibleField(Thread.class, "threadLocals");
+    private static final Field INHERITABLE_THREAD_LOCALS = accessibleField(Thread.class, "inheritableThreadLocals");
+
+    private final long gracePeriodMillis;
+    private final SharedBeanProxyCache sharedBeanProxyCache;
+    private final ReferenceQueue<ClassLoader> collectedQueue = new ReferenceQueue<>();
+    // released class loaders not collected yet
+    private final Set<ReleasedClassLoader> releasedClassLoaders = ConcurrentHashMap.newKeySet();
+    private ScheduledExecutorService scheduler;
+    private boolean closed;
+
+    public PluginClassLoaderLeakDetector(Duration gracePeriod, SharedBeanProxyCache sharedBeanProxyCache) {
+        this.gracePeriodMillis = gracePeriod.toMillis();
+        this.sharedBeanProxyCache = sharedBeanProxyCache;
+    }
+
+    /**
+     * Track class loader of an unloaded plugin, which is expected to be collected
+     * within grace period.
+     */
+    public void track(String pluginId, ClassLoader classLoader) {
+        if (classLoader == null) return;
+        releasedClassLoaders.add(new ReleasedClassLoader(pluginId, classLoader, collectedQueue));
+        schedule();
+    }
+
+    /**
+     * Check released class loaders exceeding grace period. Suspects of a leaked class
+     * loader are only inspected once.
+     */
+    public synchronized void check() {
+        expungeCollected();
+        long now = System.currentTimeMillis();
+        for (ReleasedClassLoader released : releasedClassLoaders) {
+            if (released.leak != null || now - released.releasedAt < gracePeriodMillis) continue;
+            ClassLoader classLoader = released.get();
+            if (classLoader == null) continue;
+            released.leak = inspect(released, classLoader);
+            log.warn("[SBP] Class loader of plugin {} is not collected {}s after unloaded, suspects: {}",
+                released.pluginId, (now - released.releasedAt) / 1000, released.leak.suspects);
+        }
+    }
+
+    /**
+     * @return class loaders still reachable after grace period.
+     */
+    public List<PluginClassLoaderLeak> getLeaks() {
+        expungeCollected();
+        return releasedClassLoaders.stream()
+            .map(released -> released.leak)
+            .filter(Objects::nonNull)
+            .collect(Collectors.toList());
+    }
+
+    public int getLeakedCount() {
+        return getLeaks().size();
+    }
+
+    /**
+     * @return count of released class loaders not collected yet, leaked or not.
+     */
+    public int getReleasedCount() {
+        expungeCollected();
+        return releasedClassLoaders.size();
+    }
+
+    private void expungeCollected() {
+        Reference<? extends ClassLoader> collected;
+        while ((collected = collectedQueue.poll()) != null) {
+            ReleasedClassLoader released = (ReleasedClassLoader) collected;
+            releasedClassLoaders.remove(released);
+            if (released.leak != null) {
+                log.info("[SBP] Class loader of plugin {} reported as leaked is collected eventually",
+                    released.pluginId);
+            }
+        }
+    }
+
+    /**
+     * Stop checking, class loaders tracked afterwards are not checked either.
+     */
+    public synchronized void close() {
+        closed = true;
+        if (scheduler != null) scheduler.shutdownNow();
+    }
+
+    private synchronized void schedule() {
+        if (scheduler != null || closed) return;
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("sbp-leak-detector-");
+        threadFactory.setDaemon(true);
+        scheduler = Executors.newSingleThreadScheduledExecutor(threadFactory);
+        long period = Math.max(1000, Math.min(gracePeriodMillis / 2, 60_000));
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                check();
+            } catch (Exception e) {
+                log.warn("Failed to check plugin class loader leaks", e);
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    //*************************************************************************
+    // Suspects
+    //*************************************************************************
+
+    private PluginClassLoaderLeak inspect(ReleasedClassLoader released, ClassLoader classLoader) {
+        List<String> suspects = new ArrayList<>();
+        inspectThreads(classLoader, suspects);
+        inspectJdbcDrivers(classLoader, suspects);
+        if (referencedByStaticFields(ApplicationContextProvider.class, classLoader) == Boolean.TRUE) {
+            suspects.add("ApplicationContextProvider entry of plugin ApplicationContext");
+        }
+        if (ClassUtils.isPresent(JACKSON_TYPE_FACTORY, getClass().getClassLoader())) {
+            inspectJacksonTypeFactory(classLoader, suspects);
+        }
+        if (sharedBeanProxyCache.holds(classLoader)) {
+            suspects.add("SharedBeanProxyCache proxy classes of plugin beans");
+        }
+
+        PluginClassLoaderLeak leak = new PluginClassLoaderLeak();
+        leak.pluginId = released.pluginId;
+        leak.classLoader = released.description;
+        leak.releasedAt = Instant.ofEpochMilli(released.releasedAt);
+        leak.suspects = suspects;
+        return leak;
+    }
+
+    private void inspectThreads(ClassLoader classLoader, List<String> suspects) {
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (isLoadedBy(thread.getClass(), classLoader)) {
+                suspects.add("Thread '" + thread.getName() + "' of " + thread.getClass().getName() + " is not stopped");
+            } else if (thread.getContextClassLoader() == classLoader) {
+                suspects.add("Thread '" + thread.getName() + "' uses plugin class loader as context class loader");
+            }
+            for (Field field : new Field[] { THREAD_LOCALS, INHERITABLE_THREAD_LOCALS }) {
+                if (field == null) continue;
+                try {
+                    if (references(field.get(thread), classLoader, MAX_DEPTH, newVisited())) {
+                        suspects.add("ThreadLocal value of thread '" + thread.getName() + "'");
+                        break;
+                    }
+                } catch (IllegalAccessException ignored) {}
+            }
+        }
+        if (THREAD_LOCALS == null) {
+            log.debug("ThreadLocals are not inspected, open them by --add-opens java.base/java.lang=ALL-UNNAMED");
+        }
+    }
+
+    private void inspectJdbcDrivers(ClassLoader classLoader, List<String> suspects) {
+        Boolean registered = referencedByStaticFields(DriverManager.class, classLoader);
+        if (registered != null) {
+            if (registered) suspects.add("JDBC driver registered to DriverManager");
+            return;
+        }
+        // registered drivers are not accessible, report drivers shipped with plugin instead
+        if (!(classLoader instanceof URLClassLoader)) return;
+        try {
+            Enumeration<URL> urls = ((URLClassLoader) classLoader).findResources(JDBC_DRIVER_SERVICE);
+            while (urls.hasMoreElements()) {
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                        urls.nextElement().openStream(), StandardCharsets.UTF_8))) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        int comment = line.indexOf('#');
+                        if (comment >= 0) line = line.substring(0, comment);
+                        if (line.trim().isEmpty()) continue;
+                        suspects.add("JDBC driver " + line.trim()
+                            + " provided by plugin might be still registered to DriverManager");
+                    }
+                }
+            }
+        } catch (IOException e) {
+            log.debug("Failed to read JDBC drivers of plugin class loader", e);
+        }
+    }
+
+    private void inspectJacksonTypeFactory(ClassLoader classLoader, List<String> suspects) {
+        try {
+            Class<?> typeFactoryClass = ClassUtils.forName(JACKSON_TYPE_FACTORY, getClass().getClassLoader());
+            Object typeFactory = typeFactoryClass.getMethod("defaultInstance").invoke(null);
+            if (references(typeFactory, classLoader, MAX_DEPTH, newVisited())) {
+                suspects.add("Jackson TypeFactory cache, clear it by TypeFactory.defaultInstance().clearCache()");
+            }
+        } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+            log.debug("Failed to inspect Jackson TypeFactory cache", e);
+        }
+    }
+
+    /**
+     * @return null if static fields of holder are not accessible.
+     */
+    private static Boolean referencedByStaticFields(Class<?> holder, ClassLoader classLoader) {
+        boolean accessible = false;
+        Set<Object> visited = newVisited();
+        for (Field field : holder.getDeclaredFields()) {
+            if (!Modifier.isStatic(field.getModifiers()) || field.getType().isPrimitive()) continue;
+            try {
+                field.setAccessible(true);
+                accessible = true;
+                if (references(field.get(null), classLoader, MAX_DEPTH, visited)) return true;
+            } catch (IllegalAccessException | RuntimeException ignored) {}
+        }
+        return accessible ? Boolean.FALSE : null;
+    }
+
+    /**
+     * Search references to given class loader from value, by walking through its fields,
+     * collection elements and map entries up to given depth.
+     */
+    private static boolean references(Object value, ClassLoader classLoader, int depth, Set<Object> visited) {
+        try {
+            return doReferences(value, classLoader, depth, visited);
+        } catch (RuntimeException e) {
+            // e.g. collections modified concurrently, or proxies failing to initialize lazily
+            return false;
+        }
+    }
+
+    private static boolean doReferences(Object value, ClassLoader classLoader, int depth, Set<Object> visited) {
+        if (value == null) return false;
+        if (value == classLoader) return true;
+        Class<?> type = value instanceof Class ? (Class<?>) value : value.getClass();
+        if (isLoadedBy(type, classLoader)) return true;
+        if (value instanceof ResourceLoader && ((ResourceLoader) value).getClassLoader() == classLoader) return true;
+        if (depth <= 0 || value instanceof Class || value instanceof CharSequence
+            || value instanceof Number || !visited.add(value)) return false;
+        if (value instanceof Map) {
+            int count = 0;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                if (++count > MAX_ELEMENTS) break;
+                if (references(entry.getKey(), classLoader, depth - 1, visited)
+                    || references(entry.getValue(), classLoader, depth - 1, visited)) return true;
+            }
+            return false;
+        }
+        if (value instanceof Collection) {
+            int count = 0;
+            for (Object element : (Collection<?>) value) {
+                if (++count > MAX_ELEMENTS) break;
+                if (references(element, classLoader, depth - 1, visited)) return true;
+            }
+            return false;
+        }
+        if (type.isArray()) {
+            if (type.getComponentType().isPrimitive()) return false;
+            int length = Math.min(Array.getLength(value), MAX_ELEMENTS);
+            for (int i = 0; i < length; i++) {
+                if (references(Array.get(value, i), classLoader, depth - 1, visited)) return true;
+            }
+            return false;
+        }
+        for (Class<?> clazz = type; clazz != null && clazz != Object.class; clazz = clazz.getSuperclass()) {
+            for (Field field : clazz.getDeclaredFields()) {
+                if (Modifier.isStatic(field.getModifiers()) || field.getType().isPrimitive()) continue;
+                try {
+                    field.setAccessible(true);
+                    if (references(field.get(value), classLoader, depth - 1, visited)) return true;
+                } catch (IllegalAccessException | RuntimeException ignored) {}
+            }
+        }
+        return false;
+    }
+
+    private static boolean isLoadedBy(Class<?> type, ClassLoader classLoader) {
+        while (type.isArray()) type = type.getComponentType();
+        return type.getClassLoader() == classLoader;
+    }
+
+    private static Set<Object> newVisited() {
+        return Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+
+    private static Field accessibleField(Class<?> type, String name) {
+        try {
+            Field field = type.getDeclaredField(name);
+            field.setAccessible(true);
+            return field;
+        } catch (NoSuchFieldException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static class ReleasedClassLoader extends WeakReference<ClassLoader> {
+        private final String pluginId;
+        private final String description;
+        private final long releasedAt = System.currentTimeMillis();
+        private volatile PluginClassLoaderLeak leak;
+
+        ReleasedClassLoader(String pluginId, ClassLoader classLoader, ReferenceQueue<ClassLoader> queue) {
+            super(classLoader, queue);
+            this.pluginId = pluginId;
+            this.description = classLoader.getClass().getName() + "@"
+                + Integer.toHexString(System.identityHashCode(classLoader));
+        }
+    }
+}
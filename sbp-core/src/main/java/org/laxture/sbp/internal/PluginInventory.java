@@ -0,0 +1,229 @@
+/*
+ * Copyright (C) 2019-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.laxture.sbp.internal;
+
+import lombok.extern.slf4j.Slf4j;
+import org.pf4j.PluginDescriptor;
+import org.pf4j.PluginDescriptorFinder;
+import org.pf4j.PluginRepository;
+import org.pf4j.PluginRuntimeException;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Descriptors of plugins in plugin repository, cached by plugin path and its last
+ * modified time and size, so listing plugins doesn't open every plugin jar again.
+ * <p>
+ * Plugins roots are watched by {@link WatchService}. Once watched, cached entries and
+ * plugin paths are trusted until a change under plugins root is notified, and jar files
+ * are not even checked. Plugin directories of development mode are always checked by
+ * their descriptor files, since changes nested in them are not notified.
+ *
+ * @author <a href="https://github.com/hank-cp">Hank CP</a>
+ */
+@Slf4j
+public class PluginInventory {
+
+    private final PluginRepository pluginRepository;
+    private final PluginDescriptorFinder descriptorFinder;
+    private final List<Path> pluginsRoots;
+
+    private final Map<Path, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong revision = new AtomicLong();
+    private volatile List<Path> pluginPaths;
+    private volatile WatchService watchService;
+
+    public PluginInventory(PluginRepository pluginRepository,
+                           PluginDescriptorFinder descriptorFinder,
+                           List<Path> pluginsRoots) {
+        this.pluginRepository = pluginRepository;
+        this.descriptorFinder = descriptorFinder;
+        this.pluginsRoots = pluginsRoots;
+    }
+
+    /**
+     * Watch plugins roots for changes. Entries are checked by last modified time
+     * and size on every read if watching is not supported.
+     */
+    public synchronized void watch() {
+        if (watchService != null) return;
+        WatchService watchService;
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            for (Path pluginsRoot : pluginsRoots) {
+                if (!Files.isDirectory(pluginsRoot)) continue;
+                pluginsRoot.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+            }
+        } catch (IOException | UnsupportedOperationException e) {
+            log.warn("Failed to watch plugins roots {}, plugin descriptors are checked on every read",
+                pluginsRoots, e);
+            return;
+        }
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("sbp-plugin-inventory-");
+        threadFactory.setDaemon(true);
+        threadFactory.newThread(() -> processEvents(watchService)).start();
+        invalidateAll();
+        this.watchService = watchService;
+    }
+
+    public synchronized void close() {
+        if (watchService == null) return;
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            log.warn("Failed to close watch service of plugins roots", e);
+        }
+        watchService = null;
+    }
+
+    public boolean isWatching() {
+        return watchService != null;
+    }
+
+    /**
+     * @return a number changed every time a cached descriptor or plugin path is invalidated,
+     * so responses built from inventory could tell whether they are still valid.
+     */
+    public long getRevision() {
+        return revision.get();
+    }
+
+    /**
+     * @return plugin paths of plugin repository, listed again only if plugins roots are changed.
+     */
+    public List<Path> getPluginPaths() {
+        List<Path> paths = pluginPaths;
+        if (paths == null || !isWatching()) {
+            List<Path> listed = Collections.unmodifiableList(new ArrayList<>(pluginRepository.getPluginPaths()));
+            // not notified if not watching, tell changes by listing
+            if (paths != null && !paths.equals(listed)) revision.incrementAndGet();
+            paths = listed;
+            pluginPaths = paths;
+        }
+        return paths;
+    }
+
+    /**
+     * @return descriptor currently on disk, or null if plugin path is removed or
+     * its descriptor is invalid.
+     */
+    public PluginDescriptor find(Path pluginPath) {
+        Path key = key(pluginPath);
+        Entry entry = entries.get(key);
+        boolean trusted = isWatching() && !Files.isDirectory(pluginPath);
+        if (entry != null && trusted) return entry.descriptor;
+        long currentRevision = revision.get();
+        long stamp = stamp(pluginPath);
+        if (entry != null && entry.stamp == stamp) return entry.descriptor;
+
+        PluginDescriptor descriptor = null;
+        if (stamp != 0) {
+            try {
+                descriptor = descriptorFinder.find(pluginPath);
+            } catch (PluginRuntimeException e) {
+                log.debug("Invalid plugin descriptor of {}", pluginPath, e);
+            }
+        }
+        Entry found = new Entry(stamp, descriptor);
+        entries.put(key, found);
+        // changed while reading, don't trust it
+        if (revision.get() != currentRevision) entries.remove(key, found);
+        if (entry != null) revision.incrementAndGet();
+        return descriptor;
+    }
+
+    public void invalidate(Path pluginPath) {
+        entries.remove(key(pluginPath));
+        pluginPaths = null;
+        revision.incrementAndGet();
+    }
+
+    public void invalidateAll() {
+        entries.clear();
+        pluginPaths = null;
+        revision.incrementAndGet();
+    }
+
+    private void processEvents(WatchService watchService) {
+        while (true) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            Path pluginsRoot = (Path) key.watchable();
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    invalidateAll();
+                } else {
+                    Path pluginPath = pluginsRoot.resolve((Path) event.context());
+                    log.debug("Plugin path {} is changed by {}", pluginPath, event.kind().name());
+                    invalidate(pluginPath);
+                }
+            }
+            if (!key.reset()) {
+                log.warn("Plugins root {} is no longer watched", pluginsRoot);
+                invalidateAll();
+            }
+        }
+    }
+
+    private static Path key(Path pluginPath) {
+        return pluginPath.toAbsolutePath().normalize();
+    }
+
+    /**
+     * @return 0 if plugin path doesn't exist.
+     */
+    private static long stamp(Path pluginPath) {
+        if (!Files.isDirectory(pluginPath)) return stampFile(pluginPath);
+        // directory modified time doesn't cover nested files, stamp by descriptor files instead
+        long stamp = 1;
+        stamp = 31 * stamp + stampFile(pluginPath.resolve(PluginPathPrefixes.PROPERTIES_PATH));
+        for (String classesDir : PluginPathPrefixes.DEVELOPMENT_CLASSES_DIRS) {
+            stamp = 31 * stamp + stampFile(pluginPath.resolve(classesDir).resolve(PluginPathPrefixes.MANIFEST_PATH));
+        }
+        return stamp;
+    }
+
+    private static long stampFile(Path path) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            return 31 * attributes.lastModifiedTime().toMillis() + attributes.size();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static class Entry {
+
+        final long stamp;
+        final PluginDescriptor descriptor;
+
+        Entry(long stamp, PluginDescriptor descriptor) {
+            this.stamp = stamp;
+            this.descriptor = descriptor;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2019-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.laxture.sbp.internal;
+
+import lombok.extern.slf4j.Slf4j;
+import org.pf4j.PluginRuntimeException;
+
+import java.io.*;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Entry names of a plugin jar, so class loader could tell a class/resource is
+ * not in the plugin without searching the jar.
+ * <p>
+ * The index could be persisted next to the jar as `&lt;jar&gt;.sbpidx`, which is
+ * reused as long as jar size and last modified time are not changed.
+ *
+ * @author <a href="https://github.com/hank-cp">Hank CP</a>
+ */
+@Slf4j
+public class PluginJarIndex {
+
+    public static final String INDEX_FILE_SUFFIX = ".sbpidx";
+
+    private static final int INDEX_FILE_VERSION = 1;
+
+    private final URL url;
+    private final Set<String> entryNames;
+
+    private PluginJarIndex(URL url, Set<String> entryNames) {
+        this.url = url;
+        this.entryNames = entryNames;
+    }
+
+    public URL getUrl() {
+        return url;
+    }
+
+    /**
+     * Same as {@link JarFile#getEntry}, a directory is also found by name without
+     * trailing slash.
+     */
+    public boolean contains(String name) {
+        return entryNames.contains(name)
+            || (!name.endsWith("/") && entryNames.contains(name + "/"));
+    }
+
+    public boolean containsClass(String className) {
+        return entryNames.contains(className.replace('.', '/') + ".class");
+    }
+
+    public int size() {
+        return entryNames.size();
+    }
+
+    public static PluginJarIndex of(File jarFile, boolean persist) {
+        URL url;
+        try {
+            url = jarFile.toURI().toURL();
+        } catch (MalformedURLException e) {
+            throw new PluginRuntimeException(e);
+        }
+
+        File indexFile = new File(jarFile.getPath() + INDEX_FILE_SUFFIX);
+        if (persist) {
+            Set<String> entryNames = readIndexFile(jarFile, indexFile);
+            if (entryNames != null) return new PluginJarIndex(url, entryNames);
+        }
+
+        Set<String> entryNames = scan(jarFile);
+        if (persist) writeIndexFile(jarFile, indexFile, entryNames);
+        return new PluginJarIndex(url, entryNames);
+    }
+
+    private static Set<String> scan(File jarFile) {
+        long ts = System.currentTimeMillis();
+        Set<String> entryNames = new HashSet<>();
+        try (JarFile jar = new JarFile(jarFile)) {
+            Enumeration<JarEntry> entries = jar.entries();
+            while (entries.hasMoreElements()) {
+                entryNames.add(entries.nextElement().getName());
+            }
+        } catch (IOException e) {
+            throw new PluginRuntimeException(e, "Failed to index plugin jar {}", jarFile);
+        }
+        log.debug("Indexed {} entries of plugin jar {} in {}ms",
+            entryNames.size(), jarFile, System.currentTimeMillis() - ts);
+        return entryNames;
+    }
+
+    private static Set<String> readIndexFile(File jarFile, File indexFile) {
+        if (!indexFile.isFile()) return null;
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(indexFile.toPath())))) {
+            if (in.readInt() != INDEX_FILE_VERSION
+                || in.readLong() != jarFile.length()
+                || in.readLong() != jarFile.lastModified()) return null;
+            int count = in.readInt();
+            Set<String> entryNames = new HashSet<>(count * 4 / 3 + 1);
+            for (int i = 0; i < count; i++) {
+                entryNames.add(in.readUTF());
+            }
+            return entryNames;
+        } catch (IOException e) {
+            log.debug("Ignore invalid plugin jar index {}", indexFile, e);
+            return null;
+        }
+    }
+
+    private static void writeIndexFile(File jarFile, File indexFile, Set<String> entryNames) {
+        File tmpFile = new File(indexFile.getPath() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(tmpFile.toPath())))) {
+                out.writeInt(INDEX_FILE_VERSION);
+                out.writeLong(jarFile.length());
+                out.writeLong(jarFile.lastModified());
+                out.writeInt(entryNames.size());
+                for (String entryName : entryNames) {
+                    out.writeUTF(entryName);
+                }
+            }
+            Files.move(tmpFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            // plugins directory might be read-only, index is just rebuilt next time
+            log.debug("Failed to persist plugin jar index {}", indexFile, e);
+            tmpFile.delete();
+        }
+    }
+}
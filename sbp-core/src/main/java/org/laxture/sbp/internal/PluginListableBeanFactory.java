@@ -15,11 +15,13 @@
  */
 package org.laxture.sbp.internal;
 
-import org.laxture.sbp.util.BeanUtil;
 import org.springframework.beans.factory.support.DefaultListableBeanFactory;
 import org.springframework.beans.factory.support.RootBeanDefinition;
 
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * @author <a href="https://github.com/hank-cp">Hank CP</a>
@@ -28,14 +30,64 @@ public class PluginListableBeanFactory extends DefaultListableBeanFactory {
 
     private ClassLoader classLoader;
 
+    private final Map<String, Class<?>> resolvedBeanClasses = new ConcurrentHashMap<>();
+    private final Set<String> unresolvedBeanNames = ConcurrentHashMap.newKeySet();
+    private final LongAdder avoidedClassLoadingCount = new LongAdder();
+
     public PluginListableBeanFactory(ClassLoader classLoader) {
         this.classLoader = classLoader;
     }
 
     protected Class<?> predictBeanType(String beanName, RootBeanDefinition mbd, Class<?>... typesToMatch) {
-        try {
-            return classLoader.loadClass(beanName);
-        } catch (ClassNotFoundException ignored) {}
+        Class<?> beanClass = loadBeanClass(beanName);
+        if (beanClass != null) return beanClass;
         return super.predictBeanType(beanName, mbd, typesToMatch);
     }
+
+    private Class<?> loadBeanClass(String beanName) {
+        Class<?> beanClass = resolvedBeanClasses.get(beanName);
+        if (beanClass != null) return beanClass;
+        if (unresolvedBeanNames.contains(beanName) || !isClassName(beanName)) {
+            avoidedClassLoadingCount.increment();
+            return null;
+        }
+
+        try {
+            beanClass = classLoader.loadClass(beanName);
+            resolvedBeanClasses.put(beanName, beanClass);
+            return beanClass;
+        } catch (ClassNotFoundException ignored) {
+            unresolvedBeanNames.add(beanName);
+            return null;
+        }
+    }
+
+    /**
+     * @return count of class loading attempts skipped by {@link #predictBeanType}
+     * because bean name is not a class name, or is known not to be a loadable class.
+     */
+    public long getAvoidedClassLoadingCount() {
+        return avoidedClassLoadingCount.sum();
+    }
+
+    /**
+     * Bean name could be a class name only if it is dot separated java identifiers.
+     */
+    static boolean isClassName(String name) {
+        if (name.isEmpty() || name.indexOf('.') < 0) return false;
+        boolean segmentStart = true;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c == '.') {
+                if (segmentStart) return false;
+                segmentStart = true;
+            } else if (segmentStart) {
+                if (!Character.isJavaIdentifierStart(c)) return false;
+                segmentStart = false;
+            } else if (!Character.isJavaIdentifierPart(c)) {
+                return false;
+            }
+        }
+        return !segmentStart;
+    }
 }
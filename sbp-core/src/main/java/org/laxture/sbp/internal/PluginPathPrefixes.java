@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2019-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.laxture.sbp.internal;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+
+/**
+ * Read request path prefixes served by a plugin, declared without starting it,
+ * by `Plugin-Path-Prefixes` attribute of plugin manifest, or `plugin.pathPrefixes`
+ * of `plugin.properties`. Prefixes are separated by comma.
+ *
+ * @author <a href="https://github.com/hank-cp">Hank CP</a>
+ */
+@Slf4j
+public class PluginPathPrefixes {
+
+    public static final String MANIFEST_ATTRIBUTE = "Plugin-Path-Prefixes";
+    public static final String PROPERTY_NAME = "plugin.pathPrefixes";
+
+    static final String MANIFEST_PATH = "META-INF/MANIFEST.MF";
+    static final String PROPERTIES_PATH = "plugin.properties";
+    // where manifest is generated in development mode
+    static final String[] DEVELOPMENT_CLASSES_DIRS = {
+        "", "target/classes", "build/classes/java/main", "build/resources/main", "out/production/classes"
+    };
+
+    private PluginPathPrefixes() {}
+
+    /**
+     * @return declared path prefixes, or empty list if none declared.
+     */
+    public static List<String> read(Path pluginPath) {
+        try {
+            if (Files.isRegularFile(pluginPath)) return readJar(pluginPath);
+            if (Files.isDirectory(pluginPath)) return readDirectory(pluginPath);
+        } catch (IOException e) {
+            log.warn("Failed to read path prefixes of plugin {}", pluginPath, e);
+        }
+        return Collections.emptyList();
+    }
+
+    private static List<String> readJar(Path pluginPath) throws IOException {
+        try (JarFile jar = new JarFile(pluginPath.toFile())) {
+            Manifest manifest = jar.getManifest();
+            if (manifest != null) {
+                String prefixes = manifest.getMainAttributes().getValue(MANIFEST_ATTRIBUTE);
+                if (StringUtils.isNotBlank(prefixes)) return split(prefixes);
+            }
+            ZipEntry entry = jar.getEntry(PROPERTIES_PATH);
+            if (entry == null) return Collections.emptyList();
+            try (InputStream in = jar.getInputStream(entry)) {
+                return readProperties(in);
+            }
+        }
+    }
+
+    private static List<String> readDirectory(Path pluginPath) throws IOException {
+        for (String classesDir : DEVELOPMENT_CLASSES_DIRS) {
+            Path manifestPath = pluginPath.resolve(classesDir).resolve(MANIFEST_PATH);
+            if (!Files.isRegularFile(manifestPath)) continue;
+            try (InputStream in = Files.newInputStream(manifestPath)) {
+                String prefixes = new Manifest(in).getMainAttributes().getValue(MANIFEST_ATTRIBUTE);
+                if (StringUtils.isNotBlank(prefixes)) return split(prefixes);
+            }
+        }
+        Path propertiesPath = pluginPath.resolve(PROPERTIES_PATH);
+        if (!Files.isRegularFile(propertiesPath)) return Collections.emptyList();
+        try (InputStream in = Files.newInputStream(propertiesPath)) {
+            return readProperties(in);
+        }
+    }
+
+    private static List<String> readProperties(InputStream in) throws IOException {
+        Properties properties = new Properties();
+        properties.load(in);
+        String prefixes = properties.getProperty(PROPERTY_NAME);
+        return StringUtils.isNotBlank(prefixes) ? split(prefixes) : Collections.emptyList();
+    }
+
+    private static List<String> split(String prefixes) {
+        List<String> result = new ArrayList<>();
+        for (String prefix : prefixes.split(",")) {
+            prefix = prefix.trim();
+            if (prefix.isEmpty()) continue;
+            if (!prefix.startsWith("/")) prefix = "/" + prefix;
+            result.add(prefix);
+        }
+        return result;
+    }
+
+    /**
+     * @return true if the path is the prefix itself, or under it.
+     */
+    public static boolean matches(String prefix, String path) {
+        if (!path.startsWith(prefix)) return false;
+        return path.length() == prefix.length()
+            || prefix.endsWith("/")
+            || path.charAt(prefix.length()) == '/';
+    }
+}
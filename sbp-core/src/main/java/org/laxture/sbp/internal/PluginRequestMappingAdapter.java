@@ -34,6 +34,8 @@ import java.util.stream.Collectors;
  */
 public interface PluginRequestMappingAdapter {
 
+    String ROUTER_FUNCTION_MAPPING = "routerFunctionMapping";
+
     //*************************************************************************
     // RequestMapping
     //*************************************************************************
@@ -52,6 +54,12 @@ public interface PluginRequestMappingAdapter {
             unregisterController(springBootPlugin, bean));
     }
 
+    /**
+     * Forget RequestMappings recorded for given plugin, called once plugin is unloaded
+     * or deleted, but not reloaded.
+     */
+    default void releasePluginMappings(String pluginId) {}
+
     default Map<String, Object> getControllerBeans(SpringBootPlugin springBootPlugin) {
         LinkedHashMap<String, Object> beans = new LinkedHashMap<>();
         ApplicationContext applicationContext = springBootPlugin.getApplicationContext();
@@ -79,13 +87,16 @@ public interface PluginRequestMappingAdapter {
             springBootPlugin.unregisterBeanFromMainContext(beanName);
             springBootPlugin.registerBeanToMainContext(beanName, bean);
         });
-        this.initRouterFunctions(springBootPlugin);
+        // run once for plugins changed in batch
+        springBootPlugin.getPluginManager().deferRefresh(ROUTER_FUNCTION_MAPPING,
+            () -> this.initRouterFunctions(springBootPlugin));
     }
 
     default void unregisterRouterFunction(SpringBootPlugin springBootPlugin) {
         getRouterFunctionBeans(springBootPlugin).forEach(
             (beanName, bean) -> springBootPlugin.unregisterBeanFromMainContext(beanName));
-        this.initRouterFunctions(springBootPlugin);
+        springBootPlugin.getPluginManager().deferRefresh(ROUTER_FUNCTION_MAPPING,
+            () -> this.initRouterFunctions(springBootPlugin));
     }
 
     default Map<String, Object> getRouterFunctionBeans(SpringBootPlugin springBootPlugin) {
@@ -100,7 +111,7 @@ public interface PluginRequestMappingAdapter {
 
     default void initRouterFunctions(SpringBootPlugin springBootPlugin) {
         try {
-            Object mapping = springBootPlugin.getMainApplicationContext().getBean("routerFunctionMapping");
+            Object mapping = springBootPlugin.getMainApplicationContext().getBean(ROUTER_FUNCTION_MAPPING);
             Method initMethod;
             try {
                 initMethod = mapping.getClass().getDeclaredMethod("initRouterFunctions");
@@ -0,0 +1,236 @@
+/*
+ * Copyright (C) 2019-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.laxture.sbp.internal;
+
+import lombok.extern.slf4j.Slf4j;
+import org.pf4j.PluginManager;
+import org.pf4j.PluginState;
+import org.pf4j.PluginWrapper;
+import org.springframework.cache.support.AbstractValueAdaptingCache;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.Resource;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache for static resource chain, with approximate LRU eviction and time to live.
+ * Lookups are lock free, entries last accessed earliest are evicted in batch once
+ * max size is exceeded.
+ * <p>
+ * Entries are tagged with the plugin serving the resource, so plugin state changes
+ * only evict entries of the plugins changed. Entries served by main app are evicted
+ * when any plugin is started since they might be overridden by the plugin. Entries
+ * whose owner is unknown, like resolved url paths, are always evicted.
+ *
+ * @author <a href="https://github.com/hank-cp">Hank CP</a>
+ */
+@Slf4j
+public class PluginResourceChainCache extends AbstractValueAdaptingCache {
+
+    public static final int DEFAULT_MAX_SIZE = 1024;
+    public static final Duration DEFAULT_TIME_TO_LIVE = Duration.ofHours(1);
+
+    private static final String MAIN_APP_TAG = "";
+
+    private final String name;
+    private final int maxSize;
+    private final long timeToLiveMillis;
+
+    private final ConcurrentHashMap<Object, Entry> store = new ConcurrentHashMap<>();
+    private final AtomicBoolean evicting = new AtomicBoolean();
+    // plugin class loader -> plugin id, of started plugins
+    private volatile Map<ClassLoader, String> pluginClassLoaders = Collections.emptyMap();
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+
+    public PluginResourceChainCache(String name) {
+        this(name, DEFAULT_MAX_SIZE, DEFAULT_TIME_TO_LIVE);
+    }
+
+    public PluginResourceChainCache(String name, int maxSize, Duration timeToLive) {
+        super(false);
+        this.name = name;
+        this.maxSize = maxSize;
+        this.timeToLiveMillis = timeToLive.toMillis();
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return store;
+    }
+
+    @Override
+    protected Object lookup(Object key) {
+        Entry entry = store.get(key);
+        long now = System.currentTimeMillis();
+        if (entry != null && entry.isExpired(timeToLiveMillis, now)) {
+            if (store.remove(key, entry)) evictionCount.increment();
+            entry = null;
+        }
+        if (entry == null) {
+            missCount.increment();
+            return null;
+        }
+        entry.lastAccessedAt = now;
+        hitCount.increment();
+        return entry.value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        ValueWrapper cached = get(key);
+        if (cached != null) return (T) cached.get();
+        T value;
+        try {
+            value = valueLoader.call();
+        } catch (Exception ex) {
+            throw new ValueRetrievalException(key, valueLoader, ex);
+        }
+        put(key, value);
+        return value;
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        store.put(key, new Entry(toStoreValue(value), getTag(value), System.currentTimeMillis()));
+        if (store.size() > maxSize) evictEldest();
+    }
+
+    @Override
+    public void evict(Object key) {
+        store.remove(key);
+    }
+
+    @Override
+    public void clear() {
+        store.clear();
+    }
+
+    /**
+     * Evict entries affected by plugins started, stopped or reloaded since last refresh.
+     */
+    public void refresh(PluginManager pluginManager) {
+        Map<ClassLoader, String> previous = pluginClassLoaders;
+        Map<ClassLoader, String> current = new IdentityHashMap<>();
+        for (PluginWrapper plugin : pluginManager.getPlugins(PluginState.STARTED)) {
+            current.put(plugin.getPluginClassLoader(), plugin.getPluginId());
+        }
+        pluginClassLoaders = current;
+
+        Set<String> stoppedPluginIds = new HashSet<>();
+        previous.forEach((classLoader, pluginId) -> {
+            if (!current.containsKey(classLoader)) stoppedPluginIds.add(pluginId);
+        });
+        boolean anyStarted = current.keySet().stream().anyMatch(classLoader -> !previous.containsKey(classLoader));
+        if (stoppedPluginIds.isEmpty() && !anyStarted) return;
+
+        int evicted = 0;
+        Iterator<Entry> itr = store.values().iterator();
+        while (itr.hasNext()) {
+            String tag = itr.next().tag;
+            if (tag == null || stoppedPluginIds.contains(tag) || (anyStarted && MAIN_APP_TAG.equals(tag))) {
+                itr.remove();
+                evicted++;
+            }
+        }
+        log.debug("Evicted {} resource chain cache entries for plugins stopped {}, {} plugins started",
+            evicted, stoppedPluginIds, anyStarted ? "some" : "no");
+    }
+
+    /**
+     * Evict entries accessed earliest down to 3/4 of max size, so eviction doesn't
+     * run on every put once cache is full. Only one thread evicts at a time, others
+     * keep going and might overshoot max size slightly.
+     */
+    private void evictEldest() {
+        if (!evicting.compareAndSet(false, true)) return;
+        try {
+            int target = maxSize - maxSize / 4;
+            List<Map.Entry<Object, Entry>> entries = new ArrayList<>(store.entrySet());
+            if (entries.size() <= target) return;
+            entries.sort(Comparator.comparingLong(e -> e.getValue().lastAccessedAt));
+            for (int i = 0; i < entries.size() - target; i++) {
+                Map.Entry<Object, Entry> eldest = entries.get(i);
+                if (store.remove(eldest.getKey(), eldest.getValue())) evictionCount.increment();
+            }
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    private String getTag(Object value) {
+        if (!(value instanceof Resource)) return null;
+        if (value instanceof ExtractedPluginResource) {
+            return ((ExtractedPluginResource) value).getPluginId();
+        }
+        if (value instanceof ClassPathResource) {
+            ClassLoader classLoader = ((ClassPathResource) value).getClassLoader();
+            String pluginId = pluginClassLoaders.get(classLoader);
+            if (pluginId != null) return pluginId;
+            return MAIN_APP_TAG;
+        }
+        // wrapped resources, like encoded or versioned ones, might come from any plugin
+        return null;
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    public int size() {
+        return store.size();
+    }
+
+    private static class Entry {
+        private final Object value;
+        private final String tag;
+        private final long createdAt;
+        // racy updates are fine, it only orders eviction
+        private volatile long lastAccessedAt;
+
+        Entry(Object value, String tag, long createdAt) {
+            this.value = value;
+            this.tag = tag;
+            this.createdAt = createdAt;
+            this.lastAccessedAt = createdAt;
+        }
+
+        boolean isExpired(long timeToLiveMillis, long now) {
+            return timeToLiveMillis > 0 && now - createdAt > timeToLiveMillis;
+        }
+    }
+}
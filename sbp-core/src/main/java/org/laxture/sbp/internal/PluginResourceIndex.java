@@ -0,0 +1,430 @@
+/*
+ * Copyright (C) 2019-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.laxture.sbp.internal;
+
+import lombok.extern.slf4j.Slf4j;
+import org.pf4j.PluginManager;
+import org.pf4j.PluginState;
+import org.pf4j.PluginWrapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Index of static resources provided by started plugins, so resource resolvers
+ * could find out the owning plugin of a resource path by a single lookup,
+ * instead of probing every plugin class loader.
+ * <p>
+ * Only resources under given static locations are indexed. Plugins whose
+ * classpath couldn't be listed, e.g. not file based, are not indexed and should
+ * still be probed. Plugins are indexed in background, so plugin starting isn't
+ * blocked by it. They are probed as well until indexed.
+ * <p>
+ * If extract directory is provided, indexed resources are also extracted to
+ * `&lt;extractDir&gt;/&lt;pluginId&gt;/&lt;generation&gt;/&lt;content hash&gt;/&lt;file name&gt;`
+ * while the plugin is indexed, so they could be served from file system without
+ * inflating the jar entry on every request. Each indexing of a plugin extracts to
+ * its own generation directory, so deleting files of a stopped plugin never touches
+ * the ones of its restarted successor. Extracted files are deleted when the plugin
+ * is stopped, or the index is closed.
+ * <p>
+ * If compressing is enabled, gzip variants of compressible extracted resources are
+ * generated next to them in background, so `EncodedResourceResolver` could serve
+ * them without compressing on every request.
+ *
+ * @author <a href="https://github.com/hank-cp">Hank CP</a>
+ */
+@Slf4j
+public class PluginResourceIndex {
+
+    private static final String GZIP_SUFFIX = ".gz";
+    private static final long COMPRESS_MIN_SIZE = 1024;
+    private static final Set<String> COMPRESSIBLE_EXTENSIONS = new HashSet<>(Arrays.asList(
+        "js", "mjs", "css", "html", "htm", "json", "map", "svg", "txt", "xml", "wasm"));
+
+    private final List<String> locations;
+    private final Path extractDir;
+    private final boolean compress;
+    // single thread, so indexing and deleting of the same plugin are run in order
+    private volatile ExecutorService indexer;
+    private volatile ExecutorService compressor;
+
+    // resource path -> owning plugin id
+    private final Map<String, String> resourceOwners = new ConcurrentHashMap<>();
+    // plugin id -> indexed plugin
+    private final Map<String, IndexedPlugin> indexedPlugins = new ConcurrentHashMap<>();
+    // plugin id -> class loader of the plugin, which indexing is pending. guarded by this
+    private final Map<String, ClassLoader> pendingPlugins = new HashMap<>();
+    private final AtomicLong generations = new AtomicLong();
+
+    /**
+     * @param locations classpath static locations, like `static/`, `public/`.
+     *                  Resources of all locations are indexed if empty.
+     */
+    public PluginResourceIndex(Collection<String> locations) {
+        this(locations, null);
+    }
+
+    /**
+     * @param extractDir directory to extract resources to, null to disable extracting.
+     */
+    public PluginResourceIndex(Collection<String> locations, Path extractDir) {
+        this(locations, extractDir, false);
+    }
+
+    /**
+     * @param compress generate gzip variants of extracted resources, only works with
+     *                 extract directory provided.
+     */
+    public PluginResourceIndex(Collection<String> locations, Path extractDir, boolean compress) {
+        this.locations = new ArrayList<>(locations);
+        this.extractDir = extractDir;
+        this.compress = compress && extractDir != null;
+    }
+
+    /**
+     * @return id of the plugin providing given resource path, or null if not
+     * provided by any indexed plugin.
+     */
+    public String getPluginId(String resourcePath) {
+        return resourceOwners.get(resourcePath);
+    }
+
+    /**
+     * @return extracted file of given resource, or null if it is not extracted.
+     */
+    public ExtractedPluginResource getExtractedResource(String pluginId, String resourcePath) {
+        IndexedPlugin indexedPlugin = indexedPlugins.get(pluginId);
+        if (indexedPlugin == null) return null;
+        return indexedPlugin.extractedResources.get(resourcePath);
+    }
+
+    /**
+     * @return true if resources of given plugin are indexed, then it doesn't need
+     * to be probed unless it owns the resource.
+     */
+    public boolean isIndexed(PluginWrapper plugin) {
+        IndexedPlugin indexedPlugin = indexedPlugins.get(plugin.getPluginId());
+        return indexedPlugin != null && indexedPlugin.classLoader == plugin.getPluginClassLoader();
+    }
+
+    /**
+     * Drop stopped plugins, and schedule indexing of newly started or reloaded ones.
+     */
+    public synchronized void refresh(PluginManager pluginManager) {
+        Map<String, PluginWrapper> startedPlugins = new LinkedHashMap<>();
+        for (PluginWrapper plugin : pluginManager.getPlugins(PluginState.STARTED)) {
+            startedPlugins.put(plugin.getPluginId(), plugin);
+        }
+
+        for (IndexedPlugin indexedPlugin : new ArrayList<>(indexedPlugins.values())) {
+            PluginWrapper plugin = startedPlugins.get(indexedPlugin.pluginId);
+            if (plugin == null || plugin.getPluginClassLoader() != indexedPlugin.classLoader) {
+                remove(indexedPlugin);
+            }
+        }
+        // pending indexing of stopped plugins is dropped once it's done
+        pendingPlugins.entrySet().removeIf(entry -> {
+            PluginWrapper plugin = startedPlugins.get(entry.getKey());
+            return plugin == null || plugin.getPluginClassLoader() != entry.getValue();
+        });
+
+        for (PluginWrapper plugin : startedPlugins.values()) {
+            if (isIndexed(plugin) || pendingPlugins.containsKey(plugin.getPluginId())) continue;
+            pendingPlugins.put(plugin.getPluginId(), plugin.getPluginClassLoader());
+            getIndexer().execute(() -> index(plugin.getPluginId(), plugin.getPluginClassLoader()));
+        }
+    }
+
+    private void index(String pluginId, ClassLoader classLoader) {
+        long ts = System.currentTimeMillis();
+        if (!isPending(pluginId, classLoader)) return;
+        Set<String> resourcePaths = listResources(classLoader);
+        if (resourcePaths == null) {
+            synchronized (this) {
+                pendingPlugins.remove(pluginId, classLoader);
+            }
+            return;
+        }
+        IndexedPlugin indexedPlugin = new IndexedPlugin(
+            pluginId, classLoader, resourcePaths, generations.incrementAndGet());
+        if (extractDir != null) extract(indexedPlugin);
+        synchronized (this) {
+            if (!pendingPlugins.remove(pluginId, classLoader)) {
+                // plugin is stopped in the meantime
+                if (extractDir != null) deleteExtracted(indexedPlugin);
+                return;
+            }
+            indexedPlugins.put(pluginId, indexedPlugin);
+            resourcePaths.forEach(path -> resourceOwners.putIfAbsent(path, pluginId));
+        }
+        if (compress) getCompressor().execute(() -> compress(indexedPlugin));
+        log.debug("Indexed {} static resources of plugin {} in {}ms",
+            resourcePaths.size(), pluginId, System.currentTimeMillis() - ts);
+    }
+
+    private synchronized boolean isPending(String pluginId, ClassLoader classLoader) {
+        return pendingPlugins.get(pluginId) == classLoader;
+    }
+
+    /**
+     * Stop indexing and compressing, and delete all extracted resources. Extract
+     * directory is deleted as well if nothing else is left in it.
+     */
+    public void close() {
+        shutdown(indexer);
+        shutdown(compressor);
+        synchronized (this) {
+            Set<String> pluginIds = new HashSet<>(indexedPlugins.keySet());
+            pluginIds.addAll(pendingPlugins.keySet());
+            pendingPlugins.clear();
+            indexedPlugins.clear();
+            resourceOwners.clear();
+            if (extractDir != null) pluginIds.forEach(this::deleteExtracted);
+        }
+        if (extractDir != null) extractDir.toFile().delete();
+    }
+
+    private static void shutdown(ExecutorService executor) {
+        if (executor == null) return;
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void remove(IndexedPlugin indexedPlugin) {
+        indexedPlugins.remove(indexedPlugin.pluginId);
+        if (extractDir != null) getIndexer().execute(() -> deleteExtracted(indexedPlugin));
+        for (String path : indexedPlugin.resourcePaths) {
+            if (!resourceOwners.remove(path, indexedPlugin.pluginId)) continue;
+            // hand over to another plugin providing the same resource
+            for (IndexedPlugin other : indexedPlugins.values()) {
+                if (other.resourcePaths.contains(path)) {
+                    resourceOwners.put(path, other.pluginId);
+                    break;
+                }
+            }
+        }
+    }
+
+    private Set<String> listResources(ClassLoader classLoader) {
+        if (!(classLoader instanceof URLClassLoader)) return null;
+        Set<String> resourcePaths = new HashSet<>();
+        try {
+            for (URL url : ((URLClassLoader) classLoader).getURLs()) {
+                if (!"file".equals(url.getProtocol())) return null;
+                File file = new File(url.toURI());
+                if (file.isDirectory()) {
+                    Path root = file.toPath();
+                    try (Stream<Path> paths = Files.walk(root)) {
+                        paths.filter(Files::isRegularFile)
+                            .map(path -> root.relativize(path).toString().replace(File.separatorChar, '/'))
+                            .filter(this::isIndexable)
+                            .forEach(resourcePaths::add);
+                    }
+                } else if (file.isFile()) {
+                    try (JarFile jar = new JarFile(file)) {
+                        Enumeration<JarEntry> entries = jar.entries();
+                        while (entries.hasMoreElements()) {
+                            JarEntry entry = entries.nextElement();
+                            if (!entry.isDirectory() && isIndexable(entry.getName())) {
+                                resourcePaths.add(entry.getName());
+                            }
+                        }
+                    }
+                }
+            }
+        } catch (IOException | URISyntaxException e) {
+            log.debug("Couldn't index plugin static resources, plugin will be probed on every request", e);
+            return null;
+        }
+        return resourcePaths;
+    }
+
+    private void extract(IndexedPlugin indexedPlugin) {
+        Path generationDir = getExtractDir(indexedPlugin);
+        for (String resourcePath : indexedPlugin.resourcePaths) {
+            try (InputStream in = indexedPlugin.classLoader.getResourceAsStream(resourcePath)) {
+                if (in == null) continue;
+                Files.createDirectories(generationDir);
+                Path tmpFile = Files.createTempFile(generationDir, "extracting", null);
+                MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                try (InputStream digestIn = new DigestInputStream(in, digest)) {
+                    Files.copy(digestIn, tmpFile, StandardCopyOption.REPLACE_EXISTING);
+                }
+                String contentHash = toHex(digest.digest());
+                String fileName = resourcePath.substring(resourcePath.lastIndexOf('/') + 1);
+                Path file = generationDir.resolve(contentHash).resolve(fileName);
+                if (Files.exists(file)) {
+                    Files.delete(tmpFile);
+                } else {
+                    Files.createDirectories(file.getParent());
+                    Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING);
+                }
+                indexedPlugin.extractedResources.put(resourcePath,
+                    new ExtractedPluginResource(indexedPlugin.pluginId, file.toFile(), contentHash));
+            } catch (IOException | NoSuchAlgorithmException e) {
+                // resource will be served from plugin classpath
+                log.debug("Failed to extract plugin resource {}", resourcePath, e);
+            }
+        }
+    }
+
+    private void compress(IndexedPlugin indexedPlugin) {
+        long ts = System.currentTimeMillis();
+        List<Path> compressed = new ArrayList<>();
+        for (ExtractedPluginResource resource : indexedPlugin.extractedResources.values()) {
+            // plugin is stopped in the meantime
+            if (indexedPlugins.get(indexedPlugin.pluginId) != indexedPlugin) break;
+            File file = resource.getFile();
+            if (!isCompressible(file)) continue;
+            Path gzFile = file.toPath().resolveSibling(file.getName() + GZIP_SUFFIX);
+            if (Files.exists(gzFile)) continue;
+            try {
+                Path tmpFile = Files.createTempFile(file.toPath().getParent(), "compressing", null);
+                try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(tmpFile))) {
+                    Files.copy(file.toPath(), out);
+                }
+                Files.move(tmpFile, gzFile, StandardCopyOption.REPLACE_EXISTING);
+                compressed.add(gzFile);
+            } catch (IOException e) {
+                // raw resource is served
+                log.debug("Failed to compress plugin resource {}", file, e);
+            }
+        }
+        if (indexedPlugins.get(indexedPlugin.pluginId) != indexedPlugin) {
+            // generation might be deleted already while compressing, don't leave variants
+            // behind. Other generations are never touched.
+            deleteExtracted(indexedPlugin);
+            return;
+        }
+        log.debug("Compressed {} static resources of plugin {} in {}ms",
+            compressed.size(), indexedPlugin.pluginId, System.currentTimeMillis() - ts);
+    }
+
+    private static boolean isCompressible(File file) {
+        if (file.length() < COMPRESS_MIN_SIZE) return false;
+        String fileName = file.getName();
+        int dot = fileName.lastIndexOf('.');
+        return dot > 0 && COMPRESSIBLE_EXTENSIONS.contains(fileName.substring(dot + 1).toLowerCase());
+    }
+
+    private synchronized ExecutorService getIndexer() {
+        if (indexer == null) {
+            indexer = newExecutor(1, "sbp-resource-indexer");
+        }
+        return indexer;
+    }
+
+    private synchronized ExecutorService getCompressor() {
+        if (compressor == null) {
+            int threads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+            compressor = newExecutor(threads, "sbp-resource-compressor");
+        }
+        return compressor;
+    }
+
+    private static ExecutorService newExecutor(int threads, String threadName) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+            30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+                Thread thread = new Thread(runnable, threadName);
+                thread.setDaemon(true);
+                return thread;
+            });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private Path getExtractDir(IndexedPlugin indexedPlugin) {
+        return extractDir.resolve(indexedPlugin.pluginId).resolve(String.valueOf(indexedPlugin.generation));
+    }
+
+    private void deleteExtracted(IndexedPlugin indexedPlugin) {
+        deleteRecursively(getExtractDir(indexedPlugin));
+        // only succeeds if no other generation is left
+        extractDir.resolve(indexedPlugin.pluginId).toFile().delete();
+    }
+
+    private void deleteExtracted(String pluginId) {
+        deleteRecursively(extractDir.resolve(pluginId));
+    }
+
+    private static void deleteRecursively(Path dir) {
+        if (!Files.exists(dir)) return;
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        } catch (IOException e) {
+            log.debug("Failed to delete extracted resources {}", dir, e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    private boolean isIndexable(String path) {
+        if (path.endsWith(".class")) return false;
+        if (locations.isEmpty()) return true;
+        for (String location : locations) {
+            if (path.startsWith(location)) return true;
+        }
+        return false;
+    }
+
+    private static class IndexedPlugin {
+        private final String pluginId;
+        private final ClassLoader classLoader;
+        private final Set<String> resourcePaths;
+        private final long generation;
+        private final Map<String, ExtractedPluginResource> extractedResources = new HashMap<>();
+
+        IndexedPlugin(String pluginId, ClassLoader classLoader, Set<String> resourcePaths, long generation) {
+            this.pluginId = pluginId;
+            this.classLoader = classLoader;
+            this.resourcePaths = resourcePaths;
+            this.generation = generation;
+        }
+    }
+}
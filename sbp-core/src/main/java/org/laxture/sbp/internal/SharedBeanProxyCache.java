@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2019-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.laxture.sbp.internal;
+
+import net.bytebuddy.ByteBuddy;
+import net.bytebuddy.description.modifier.Visibility;
+import net.bytebuddy.dynamic.DynamicType;
+import net.bytebuddy.implementation.InvocationHandlerAdapter;
+import net.bytebuddy.implementation.MethodCall;
+import net.bytebuddy.implementation.bytecode.assign.Assigner;
+import net.bytebuddy.matcher.ElementMatchers;
+import org.laxture.sbp.util.BeanUtil;
+import org.laxture.sbp.util.OmitInvocationHandler;
+import org.laxture.sbp.util.ProxyInvocationHandler;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Proxy classes for beans imported to plugin {@link org.springframework.context.ApplicationContext},
+ * which prevent plugin BeanFactory from calling `afterPropertiesSet()`/`destroy()` of imported beans.
+ * <p>
+ * Proxy class is generated once for each bean class and loaded by the class loader
+ * of the bean class, then instantiated for every plugin importing the bean. Proxy
+ * classes of beans from a plugin are evicted when the plugin is unloaded.
+ * <p>
+ * Public methods are delegated to the bean by generated direct calls, without
+ * reflection on each call.
+ *
+ * @author <a href="https://github.com/hank-cp">Hank CP</a>
+ */
+public class SharedBeanProxyCache {
+
+    private static final String TARGET_FIELD = "sbp$target";
+    private static final String HANDLER_FIELD = "sbp$handler";
+
+    private final Map<Class<?>, ProxyClass> proxyClasses = new ConcurrentHashMap<>();
+
+    private final LongAdder generatedCount = new LongAdder();
+    private final LongAdder reusedCount = new LongAdder();
+    private final LongAdder generatingNanos = new LongAdder();
+    private final LongAdder generatedBytes = new LongAdder();
+
+    @SuppressWarnings("unchecked")
+    public <T> T createProxy(T source) throws ReflectiveOperationException {
+        Class<?> beanClass = source.getClass();
+        ProxyClass proxyClass = proxyClasses.get(beanClass);
+        if (proxyClass == null) {
+            proxyClass = proxyClasses.computeIfAbsent(beanClass, this::generate);
+        } else {
+            reusedCount.increment();
+        }
+
+        Object proxy = proxyClass.type.getDeclaredConstructor().newInstance();
+        proxyClass.targetField.set(proxy, source);
+        proxyClass.handlerField.set(proxy, new ProxyInvocationHandler(source));
+        return (T) proxy;
+    }
+
+    /**
+     * Release proxy classes of beans loaded by given class loader.
+     */
+    public void evict(ClassLoader classLoader) {
+        if (classLoader == null) return;
+        proxyClasses.keySet().removeIf(beanClass -> beanClass.getClassLoader() == classLoader);
+    }
+
+    /**
+     * @return true if proxy classes of beans loaded by given class loader are still cached.
+     */
+    public boolean holds(ClassLoader classLoader) {
+        return proxyClasses.keySet().stream().anyMatch(beanClass -> beanClass.getClassLoader() == classLoader);
+    }
+
+    private ProxyClass generate(Class<?> beanClass) {
+        long ts = System.nanoTime();
+        DynamicType.Unloaded<?> unloaded = new ByteBuddy()
+            .subclass(beanClass).suffix("_sbp_proxy").unsealed()
+            .defineField(TARGET_FIELD, beanClass, Visibility.PUBLIC)
+            .defineField(HANDLER_FIELD, InvocationHandler.class, Visibility.PUBLIC)
+            // non-public methods are not accessible from proxy class loader, call them reflectively
+            .method(ElementMatchers.any())
+                .intercept(InvocationHandlerAdapter.toField(HANDLER_FIELD))
+            .method(ElementMatchers.isPublic().and(ElementMatchers.isDeclaredBy(ElementMatchers.isPublic())))
+                .intercept(MethodCall.invokeSelf().onField(TARGET_FIELD).withAllArguments()
+                    .withAssigner(Assigner.DEFAULT, Assigner.Typing.DYNAMIC))
+            .method(ElementMatchers.anyOf(
+                BeanUtil.getMethod(InitializingBean.class, "afterPropertiesSet"),
+                BeanUtil.getMethod(DisposableBean.class, "destroy")))
+                .intercept(InvocationHandlerAdapter.of(new OmitInvocationHandler()))
+            .make();
+        Class<?> type = unloaded.load(beanClass.getClassLoader()).getLoaded();
+        Field targetField;
+        Field handlerField;
+        try {
+            targetField = type.getField(TARGET_FIELD);
+            handlerField = type.getField(HANDLER_FIELD);
+        } catch (NoSuchFieldException e) {
+            throw new IllegalStateException(e);
+        }
+
+        generatedCount.increment();
+        generatingNanos.add(System.nanoTime() - ts);
+        generatedBytes.add(unloaded.getBytes().length);
+        return new ProxyClass(type, targetField, handlerField);
+    }
+
+    public long getGeneratedCount() {
+        return generatedCount.sum();
+    }
+
+    public long getReusedCount() {
+        return reusedCount.sum();
+    }
+
+    /**
+     * @return estimated time saved by reusing proxy classes, by average generating time.
+     */
+    public long getEstimatedSavedMillis() {
+        long generated = generatedCount.sum();
+        if (generated == 0) return 0;
+        return generatingNanos.sum() / generated * reusedCount.sum() / 1_000_000;
+    }
+
+    /**
+     * @return estimated class bytes not loaded into metaspace by reusing proxy classes,
+     * by average generated class size.
+     */
+    public long getEstimatedSavedBytes() {
+        long generated = generatedCount.sum();
+        if (generated == 0) return 0;
+        return generatedBytes.sum() / generated * reusedCount.sum();
+    }
+
+    private static class ProxyClass {
+        private final Class<?> type;
+        private final Field targetField;
+        private final Field handlerField;
+
+        ProxyClass(Class<?> type, Field targetField, Field handlerField) {
+            this.type = type;
+            this.targetField = targetField;
+            this.handlerField = handlerField;
+        }
+    }
+}
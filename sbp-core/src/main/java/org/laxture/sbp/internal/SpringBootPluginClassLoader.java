@@ -16,17 +16,16 @@
 package org.laxture.sbp.internal;
 
 import lombok.NonNull;
+import org.laxture.sbp.SpringBootPluginManager;
 import org.pf4j.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.URL;
-import java.util.Collection;
-import java.util.Collections;
-import java.util.Enumeration;
-import java.util.List;
-import java.util.stream.Collectors;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * @author <a href="https://github.com/hank-cp">Hank CP</a>
@@ -35,11 +34,23 @@ public class SpringBootPluginClassLoader extends PluginClassLoader {
 
     private static final Logger log = LoggerFactory.getLogger(SpringBootPluginClassLoader.class);
 
-    private List<String> pluginFirstClasses;
-    private List<String> pluginOnlyResources;
+    private static final int MAX_MISSING_CACHE_SIZE = 16384;
+
+    private NamePatternMatcher pluginFirstClasses;
+    private NamePatternMatcher pluginOnlyResources;
     private PluginManager pluginManager;
     private PluginDescriptor pluginDescriptor;
 
+    // classes not found in application and plugin classpath, which never changes
+    private final Set<String> missingClasses = ConcurrentHashMap.newKeySet();
+    // resources not found, invalidated when any plugin is loaded/unloaded
+    private final Set<String> missingResources = ConcurrentHashMap.newKeySet();
+    // transitive dependencies, flattened in depth-first order
+    private volatile List<ClassLoader> dependencyClassLoaders;
+    private volatile long pluginsRevision = -1;
+    // entries of the only jar in classpath, null if classpath is not indexed
+    private volatile PluginJarIndex jarIndex;
+
     public SpringBootPluginClassLoader(PluginManager pluginManager, PluginDescriptor pluginDescriptor, ClassLoader parent) {
         // load class from parent first to avoid same class loaded by different classLoader,
         // so Spring could autowired bean by type correctly.
@@ -49,21 +60,11 @@ public class SpringBootPluginClassLoader extends PluginClassLoader {
     }
 
     public void setPluginFirstClasses(@NonNull List<String> pluginFirstClasses) {
-        this.pluginFirstClasses = pluginFirstClasses.stream()
-                .map(pluginFirstClass -> pluginFirstClass
-                        .replaceAll(".", "[$0]")
-                        .replace("[*]", ".*?")
-                        .replace("[?]", ".?"))
-                .collect(Collectors.toList());
+        this.pluginFirstClasses = new NamePatternMatcher(pluginFirstClasses);
     }
 
     public void setPluginOnlyResources(@NonNull List<String> pluginOnlyResources) {
-        this.pluginOnlyResources = pluginOnlyResources.stream()
-                .map(pluginFirstClass -> pluginFirstClass
-                        .replaceAll(".", "[$0]")
-                        .replace("[*]", ".*?")
-                        .replace("[?]", ".?"))
-                .collect(Collectors.toList());
+        this.pluginOnlyResources = new NamePatternMatcher(pluginOnlyResources);
     }
 
     /**
@@ -72,6 +73,15 @@ public class SpringBootPluginClassLoader extends PluginClassLoader {
      */
     @Override
     public URL getResource(String name) {
+        checkPluginsRevision();
+        if (missingResources.contains(name)) return null;
+
+        URL url = doGetResource(name);
+        if (url == null) cacheMissing(missingResources, name);
+        return url;
+    }
+
+    private URL doGetResource(String name) {
         if (name.endsWith(".class")) return super.getResource(name);
 
         // load plain resource from local classpath
@@ -98,24 +108,116 @@ public class SpringBootPluginClassLoader extends PluginClassLoader {
                 return loadClassFromPlugin(className);
             } catch (ClassNotFoundException ignored) {}
         }
+
+        // known missing from application and plugin, only dependencies need to be checked
+        if (missingClasses.contains(className)) {
+            synchronized (getClassLoadingLock(className)) {
+                Class<?> loadedClass = findLoadedClass(className);
+                if (loadedClass == null) loadedClass = loadClassFromDependencies(className);
+                if (loadedClass != null) return loadedClass;
+            }
+            throw new ClassNotFoundException(className);
+        }
+
         // not found, load from parent
-        return super.loadClass(className);
+        try {
+            return super.loadClass(className);
+        } catch (ClassNotFoundException e) {
+            cacheMissing(missingClasses, className);
+            throw e;
+        }
     }
 
-    private boolean isPluginFirstClass(String name) {
-        if (pluginFirstClasses == null || pluginFirstClasses.size() <= 0) return false;
-        for (String pluginFirstClass : pluginFirstClasses) {
-            if (name.matches(pluginFirstClass)) return true;
+    /**
+     * Add plugin jar to classpath along with its entries index, so classes and
+     * resources not in the jar could be answered without searching the jar.
+     * Index only takes effect if the jar is the only classpath entry.
+     */
+    public void addIndexedFile(File jarFile, boolean persistIndex) {
+        PluginJarIndex index = PluginJarIndex.of(jarFile, persistIndex);
+        if (getURLs().length == 0) this.jarIndex = index;
+        addURL(index.getUrl());
+    }
+
+    @Override
+    public void addURL(URL url) {
+        super.addURL(url);
+        // classpath is no longer covered by index
+        if (jarIndex != null && !jarIndex.getUrl().equals(url)) jarIndex = null;
+        missingClasses.clear();
+        missingResources.clear();
+    }
+
+    @Override
+    protected Class<?> findClass(String className) throws ClassNotFoundException {
+        PluginJarIndex index = jarIndex;
+        if (index != null && !index.containsClass(className)) throw new ClassNotFoundException(className);
+        return super.findClass(className);
+    }
+
+    @Override
+    public URL findResource(String name) {
+        PluginJarIndex index = jarIndex;
+        if (index != null && !index.contains(name)) return null;
+        return super.findResource(name);
+    }
+
+    @Override
+    public Enumeration<URL> findResources(String name) throws IOException {
+        PluginJarIndex index = jarIndex;
+        if (index != null && !index.contains(name)) return Collections.emptyEnumeration();
+        return super.findResources(name);
+    }
+
+    private void cacheMissing(Set<String> cache, String name) {
+        // bounded, start over if there are too many misses
+        if (cache.size() >= MAX_MISSING_CACHE_SIZE) cache.clear();
+        cache.add(name);
+    }
+
+    private void checkPluginsRevision() {
+        if (!(pluginManager instanceof SpringBootPluginManager)) return;
+        long revision = ((SpringBootPluginManager) pluginManager).getPluginsRevision();
+        if (revision == pluginsRevision) return;
+        missingResources.clear();
+        dependencyClassLoaders = null;
+        pluginsRevision = revision;
+    }
+
+    private List<ClassLoader> getDependencyClassLoaders() {
+        checkPluginsRevision();
+        List<ClassLoader> classLoaders = dependencyClassLoaders;
+        if (classLoaders == null) {
+            classLoaders = new ArrayList<>();
+            collectDependencyClassLoaders(pluginDescriptor, new HashSet<>(), classLoaders);
+            dependencyClassLoaders = classLoaders;
         }
-        return false;
+        return classLoaders;
     }
 
-    private boolean isPluginOnlyResources(String name) {
-        if (pluginOnlyResources == null || pluginOnlyResources.size() <= 0) return false;
-        for (String pluginOnlyResource : pluginOnlyResources) {
-            if (name.matches(pluginOnlyResource)) return true;
+    private void collectDependencyClassLoaders(PluginDescriptor descriptor,
+                                               Set<String> visited, List<ClassLoader> classLoaders) {
+        for (PluginDependency dependency : descriptor.getDependencies()) {
+            if (!visited.add(dependency.getPluginId())) continue;
+            // If the dependency is marked as optional, its class loader might not be available.
+            ClassLoader classLoader = pluginManager.getPluginClassLoader(dependency.getPluginId());
+            if (classLoader == null) continue;
+            classLoaders.add(classLoader);
+
+            // dependencies of non-sbp plugin are looked up by its own class loader
+            PluginWrapper dependencyPlugin = pluginManager.getPlugin(dependency.getPluginId());
+            if (classLoader instanceof SpringBootPluginClassLoader && dependencyPlugin != null) {
+                collectDependencyClassLoaders(dependencyPlugin.getDescriptor(), visited, classLoaders);
+            }
         }
-        return false;
+    }
+
+    private boolean isPluginFirstClass(String name) {
+        return pluginFirstClasses != null && pluginFirstClasses.matches(name);
+    }
+
+    private boolean isPluginOnlyResources(String name) {
+        return pluginOnlyResources != null && pluginOnlyResources.matches(name);
     }
 
     private Class<?> loadClassFromPlugin(String className) throws ClassNotFoundException {
@@ -147,28 +249,17 @@ public class SpringBootPluginClassLoader extends PluginClassLoader {
 
     protected Class<?> loadClassFromDependencies(String className) {
         log.trace("Search in dependencies for class '{}'", className);
-        List<PluginDependency> dependencies = pluginDescriptor.getDependencies();
-        for (PluginDependency dependency : dependencies) {
-            ClassLoader classLoader = pluginManager.getPluginClassLoader(dependency.getPluginId());
-
-            // If the dependency is marked as optional, its class loader might not be available.
-            if (classLoader == null && dependency.isOptional()) {
-                continue;
-            }
-
-            try {
-                if (classLoader instanceof SpringBootPluginClassLoader) {
-                    // OPTIMIZATION: load classes from loadedClasses only to speed up class loading
-                    Class<?> clazz = ((SpringBootPluginClassLoader) classLoader).getLoadedClass(className);
-                    if (clazz != null) return clazz;
-                    // continue to find class from dependent plugin recursively
-                    clazz = ((SpringBootPluginClassLoader) classLoader).loadClassFromDependencies(className);
-                    if (clazz != null) return clazz;
-                } else {
+        for (ClassLoader classLoader : getDependencyClassLoaders()) {
+            if (classLoader instanceof SpringBootPluginClassLoader) {
+                // OPTIMIZATION: load classes from loadedClasses only to speed up class loading
+                Class<?> clazz = ((SpringBootPluginClassLoader) classLoader).getLoadedClass(className);
+                if (clazz != null) return clazz;
+            } else {
+                try {
                     return classLoader.loadClass(className);
+                } catch (ClassNotFoundException e) {
+                    // try next dependency
                 }
-            } catch (ClassNotFoundException e) {
-                // try next dependency
             }
         }
 
@@ -19,9 +19,15 @@ import lombok.extern.slf4j.Slf4j;
 import org.laxture.sbp.SpringBootPlugin;
 import org.laxture.sbp.internal.PluginRequestMappingAdapter;
 import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.result.method.RequestMappingInfo;
 import org.springframework.web.reactive.result.method.annotation.RequestMappingHandlerMapping;
 
-import java.util.HashMap;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * @author <a href="https://github.com/hank-cp">Hank CP</a>
@@ -30,6 +36,20 @@ import java.util.HashMap;
 public class PluginRequestMappingHandlerMapping extends RequestMappingHandlerMapping
     implements PluginRequestMappingAdapter {
 
+    /**
+     * RequestMappings registered by each plugin. They are kept after plugin
+     * unregistered, so requests to a stopped or reloading plugin could still be
+     * recognized, until plugin is unloaded.
+     */
+    private final Map<String, Set<RequestMappingInfo>> pluginMappings = new ConcurrentHashMap<>();
+
+    /**
+     * RequestMappings registered by each plugin controller instance, so unregistering
+     * a controller doesn't need to scan all handler methods.
+     */
+    private final Map<Object, Set<RequestMappingInfo>> controllerMappings =
+        Collections.synchronizedMap(new IdentityHashMap<>());
+
     /**
      * {@inheritDoc}
      */
@@ -44,16 +64,49 @@ public class PluginRequestMappingHandlerMapping extends RequestMappingHandlerMap
         unregisterController(springBootPlugin, controller);
         springBootPlugin.registerBeanToMainContext(beanName, controller);
         detectHandlerMethods(controller);
+        Set<RequestMappingInfo> mappings = controllerMappings.get(controller);
+        if (mappings != null) {
+            pluginMappings.computeIfAbsent(springBootPlugin.getWrapper().getPluginId(),
+                k -> ConcurrentHashMap.newKeySet()).addAll(mappings);
+        }
+    }
+
+    @Override
+    public void registerControllers(SpringBootPlugin springBootPlugin) {
+        pluginMappings.remove(springBootPlugin.getWrapper().getPluginId());
+        PluginRequestMappingAdapter.super.registerControllers(springBootPlugin);
+    }
+
+    @Override
+    public void releasePluginMappings(String pluginId) {
+        pluginMappings.remove(pluginId);
     }
 
     @Override
     public void unregisterController(SpringBootPlugin springBootPlugin, Object controller) {
-        new HashMap<>(getHandlerMethods()).forEach((mapping, handlerMethod) -> {
-            if (controller == handlerMethod.getBean()) super.unregisterMapping(mapping);
-        });
+        Set<RequestMappingInfo> mappings = controllerMappings.remove(controller);
+        if (mappings != null) mappings.forEach(super::unregisterMapping);
         springBootPlugin.unregisterBeanFromMainContext(controller);
     }
 
+    @Override
+    protected void registerHandlerMethod(Object handler, Method method, RequestMappingInfo mapping) {
+        super.registerHandlerMethod(handler, method, mapping);
+        // main app controllers are registered by bean name, plugin controllers by instance
+        if (!(handler instanceof String)) {
+            controllerMappings.computeIfAbsent(handler, k -> ConcurrentHashMap.newKeySet()).add(mapping);
+        }
+    }
+
+    /**
+     * @return RequestMappings registered by given plugin, including the ones
+     * unregistered temporarily during plugin reloading.
+     */
+    public Set<RequestMappingInfo> getPluginMappings(String pluginId) {
+        Set<RequestMappingInfo> mappings = pluginMappings.get(pluginId);
+        return mappings != null ? Collections.unmodifiableSet(mappings) : Collections.emptySet();
+    }
+
     @Override
     public Class<?> getRouterFunctionClass() {
         return RouterFunction.class;
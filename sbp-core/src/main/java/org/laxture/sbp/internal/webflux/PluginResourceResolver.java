@@ -15,6 +15,7 @@
  */
 package org.laxture.sbp.internal.webflux;
 
+import org.laxture.sbp.internal.PluginResourceIndex;
 import org.laxture.spring.util.ApplicationContextProvider;
 import org.pf4j.PluginManager;
 import org.pf4j.PluginState;
@@ -37,6 +38,19 @@ public class PluginResourceResolver extends PathResourceResolver {
     @Autowired @Lazy
     private PluginManager pluginManager;
 
+    private final PluginResourceIndex resourceIndex;
+
+    public PluginResourceResolver() {
+        this(null);
+    }
+
+    /**
+     * @param resourceIndex plugins indexed are only probed for resources they own.
+     */
+    public PluginResourceResolver(PluginResourceIndex resourceIndex) {
+        this.resourceIndex = resourceIndex;
+    }
+
     @Override
     protected Mono<Resource> getResource(String resourcePath, Resource location) {
         if (!(location instanceof ClassPathResource)) return null;
@@ -49,7 +63,17 @@ public class PluginResourceResolver extends PathResourceResolver {
         }
 
         try {
+            String ownerPluginId = resourceIndex != null
+                ? resourceIndex.getPluginId(classPathLocation.getPath() + resourcePath) : null;
+            if (ownerPluginId != null) {
+                // serve extracted file directly, it's known to be under the location
+                Resource extracted = resourceIndex.getExtractedResource(
+                    ownerPluginId, classPathLocation.getPath() + resourcePath);
+                if (extracted != null && extracted.isReadable()) return Mono.just(extracted);
+            }
             for (PluginWrapper plugin : pluginManager.getPlugins(PluginState.STARTED)) {
+                if (resourceIndex != null && resourceIndex.isIndexed(plugin)
+                    && !plugin.getPluginId().equals(ownerPluginId)) continue;
                 Resource pluginLocation = new ClassPathResource(classPathLocation.getPath(), plugin.getPluginClassLoader());
                 Resource resource = pluginLocation.createRelative(resourcePath);
                 if (resource.isReadable()) {
@@ -15,6 +15,7 @@
  */
 package org.laxture.sbp.internal.webmvc;
 
+import org.laxture.sbp.internal.PluginResourceIndex;
 import org.laxture.spring.util.ApplicationContextProvider;
 import org.pf4j.PluginManager;
 import org.pf4j.PluginState;
@@ -36,6 +37,19 @@ public class PluginResourceResolver extends PathResourceResolver {
     @Autowired @Lazy
     private PluginManager pluginManager;
 
+    private final PluginResourceIndex resourceIndex;
+
+    public PluginResourceResolver() {
+        this(null);
+    }
+
+    /**
+     * @param resourceIndex plugins indexed are only probed for resources they own.
+     */
+    public PluginResourceResolver(PluginResourceIndex resourceIndex) {
+        this.resourceIndex = resourceIndex;
+    }
+
     @Override
     protected Resource getResource(String resourcePath, Resource location) throws IOException {
         if (!(location instanceof ClassPathResource)) return null;
@@ -47,7 +61,17 @@ public class PluginResourceResolver extends PathResourceResolver {
             pluginManager = ApplicationContextProvider.getBean(PluginManager.class);
         }
 
+        String ownerPluginId = resourceIndex != null
+            ? resourceIndex.getPluginId(classPathLocation.getPath() + resourcePath) : null;
+        if (ownerPluginId != null) {
+            // serve extracted file directly, it's known to be under the location
+            Resource extracted = resourceIndex.getExtractedResource(
+                ownerPluginId, classPathLocation.getPath() + resourcePath);
+            if (extracted != null && extracted.isReadable()) return extracted;
+        }
         for (PluginWrapper plugin : pluginManager.getPlugins(PluginState.STARTED)) {
+            if (resourceIndex != null && resourceIndex.isIndexed(plugin)
+                && !plugin.getPluginId().equals(ownerPluginId)) continue;
             Resource pluginLocation = new ClassPathResource(classPathLocation.getPath(), plugin.getPluginClassLoader());
             Resource resource = pluginLocation.createRelative(resourcePath);
             if (resource.isReadable()) {
@@ -28,6 +28,16 @@ public interface IPluginConfigurer {
         return new String[] {};
     }
 
+    /**
+     * Called before plugin is bootstrapped. Plugins started together are all prepared
+     * before any of them is bootstrapped, so expensive refreshes of main app could be
+     * requested by {@link org.laxture.sbp.SpringBootPluginManager#deferRefresh} and run
+     * once for all of them.
+     */
+    default void onPrepare(SpringBootPlugin plugin) {
+        // default do nothing
+    }
+
     default void onBootstrap(SpringBootstrap bootstrap,
                              GenericApplicationContext pluginApplicationContext) {
         // default do nothing
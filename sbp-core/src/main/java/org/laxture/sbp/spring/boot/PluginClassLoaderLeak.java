@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2019-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.laxture.sbp.spring.boot;
+
+import java.io.Serializable;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * A plugin class loader still reachable after grace period since the plugin was
+ * unloaded, along with suspected holders found by
+ * {@link org.laxture.sbp.internal.PluginClassLoaderLeakDetector}.
+ *
+ * @author <a href="https://github.com/hank-cp">Hank CP</a>
+ */
+public class PluginClassLoaderLeak implements Serializable {
+
+    private static final long serialVersionUID = -2381947465092231847L;
+
+    public String pluginId;
+
+    public String classLoader;
+
+    public Instant releasedAt;
+
+    /** Possible holders of the class loader, empty if none is found */
+    public List<String> suspects;
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright (C) 2019-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.laxture.sbp.spring.boot;
+
+import org.pf4j.PluginWrapper;
+
+/**
+ * Decide whether an idle started plugin should be hibernated, i.e. stopped to
+ * release its ApplicationContext, and started again on next request or extension
+ * lookup.
+ *
+ * @author <a href="https://github.com/hank-cp">Hank CP</a>
+ */
+@FunctionalInterface
+public interface PluginHibernationPolicy {
+
+    /**
+     * @param idleMillis milliseconds since last request or extension lookup of the plugin.
+     */
+    boolean shouldHibernate(PluginWrapper plugin, long idleMillis);
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2019-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.laxture.sbp.spring.boot;
+
+import org.springframework.boot.context.metrics.buffering.StartupTimeline;
+import org.springframework.core.metrics.StartupStep;
+
+import java.io.Serializable;
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * Startup time breakdown of a plugin, summarized from the {@link StartupTimeline}
+ * recorded by {@link SpringBootstrap}, so the buffered steps could be released
+ * once plugin is started.
+ * <p>
+ * Durations of nested steps with the same name, like `spring.beans.instantiate`,
+ * are only counted once by the outermost step.
+ *
+ * @author <a href="https://github.com/hank-cp">Hank CP</a>
+ */
+public class PluginStartupReport implements Serializable {
+
+    private static final long serialVersionUID = 4190712235946137582L;
+
+    /** Time of creating plugin class loader, step of pf4j plugin loading */
+    public static final String STEP_CLASS_LOADER = "sbp.plugin.class-loader";
+    /** Run plugin {@link SpringBootstrap}, covering whole plugin ApplicationContext refreshing */
+    public static final String STEP_BOOTSTRAP = "sbp.plugin.bootstrap";
+    /** Import a bean from main or dependent plugin ApplicationContext */
+    public static final String STEP_IMPORT_BEAN = "sbp.plugin.import-bean";
+    /** Call {@link IPluginConfigurer#onStart} */
+    public static final String STEP_CONFIGURER_START = "sbp.plugin.configurer.start";
+    /** Register plugin controllers and router functions to main app */
+    public static final String STEP_REGISTER_CONTROLLERS = "sbp.plugin.controllers.register";
+    /** Register plugin extensions to main ApplicationContext */
+    public static final String STEP_REGISTER_EXTENSIONS = "sbp.plugin.extensions.register";
+
+    public String pluginId;
+
+    public Instant startedAt;
+
+    public long totalMillis;
+
+    /** Phases sorted by duration descending */
+    public List<Phase> phases;
+
+    /**
+     * @param startedAt time this starting begins. Not start time of the timeline, which is
+     *                  when plugin {@link SpringBootstrap} is created, i.e. its first starting.
+     */
+    public static PluginStartupReport of(String pluginId, Instant startedAt, long totalMillis,
+                                         long classLoaderMillis, StartupTimeline timeline) {
+        PluginStartupReport report = new PluginStartupReport();
+        report.pluginId = pluginId;
+        report.startedAt = startedAt;
+        report.totalMillis = totalMillis;
+
+        Map<String, Phase> phases = new LinkedHashMap<>();
+        if (classLoaderMillis >= 0) {
+            Phase phase = new Phase(STEP_CLASS_LOADER);
+            phase.count = 1;
+            phase.millis = classLoaderMillis;
+            phases.put(STEP_CLASS_LOADER, phase);
+        }
+        if (timeline != null) {
+            Map<Long, StartupStep> steps = new HashMap<>();
+            for (StartupTimeline.TimelineEvent event : timeline.getEvents()) {
+                steps.put(event.getStartupStep().getId(), event.getStartupStep());
+            }
+            for (StartupTimeline.TimelineEvent event : timeline.getEvents()) {
+                StartupStep step = event.getStartupStep();
+                if (isNestedInSameStep(step, steps)) continue;
+                Phase phase = phases.computeIfAbsent(step.getName(), Phase::new);
+                phase.count++;
+                phase.millis += event.getDuration().toMillis();
+            }
+        }
+        report.phases = new ArrayList<>(phases.values());
+        report.phases.sort(Comparator.comparingLong((Phase phase) -> phase.millis).reversed());
+        return report;
+    }
+
+    private static boolean isNestedInSameStep(StartupStep step, Map<Long, StartupStep> steps) {
+        Long parentId = step.getParentId();
+        while (parentId != null) {
+            StartupStep parent = steps.get(parentId);
+            if (parent == null) return false;
+            if (parent.getName().equals(step.getName())) return true;
+            parentId = parent.getParentId();
+        }
+        return false;
+    }
+
+    public static class Phase implements Serializable {
+
+        private static final long serialVersionUID = -6470982139476155431L;
+
+        public String name;
+
+        public int count;
+
+        public long millis;
+
+        Phase(String name) {
+            this.name = name;
+        }
+    }
+}
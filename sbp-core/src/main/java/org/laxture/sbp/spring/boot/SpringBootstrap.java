@@ -15,9 +15,6 @@
  */
 package org.laxture.sbp.spring.boot;
 
-import net.bytebuddy.dynamic.DynamicType;
-import net.bytebuddy.implementation.InvocationHandlerAdapter;
-import net.bytebuddy.matcher.ElementMatchers;
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.laxture.sbp.SpringBootPlugin;
@@ -25,8 +22,6 @@ import org.laxture.sbp.SpringBootPluginManager;
 import org.laxture.sbp.internal.PluginListableBeanFactory;
 import org.laxture.sbp.internal.SpringBootPluginClassLoader;
 import org.laxture.sbp.util.BeanUtil;
-import org.laxture.sbp.util.OmitInvocationHandler;
-import org.laxture.sbp.util.ProxyInvocationHandler;
 import org.pf4j.PluginDependency;
 import org.pf4j.PluginWrapper;
 import org.slf4j.Logger;
@@ -40,6 +35,7 @@ import org.springframework.beans.factory.support.RootBeanDefinition;
 import org.springframework.boot.ApplicationArguments;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.context.metrics.buffering.BufferingApplicationStartup;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationListener;
 import org.springframework.context.ConfigurableApplicationContext;
@@ -49,12 +45,12 @@ import org.springframework.core.env.ConfigurableEnvironment;
 import org.springframework.core.env.Environment;
 import org.springframework.core.env.MapPropertySource;
 import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.metrics.StartupStep;
 import org.springframework.util.CollectionUtils;
 import org.springframework.util.ReflectionUtils;
 
 import java.lang.reflect.Field;
 import java.util.*;
-import java.util.function.BiFunction;
 import java.util.stream.Collectors;
 
 /**
@@ -70,6 +66,8 @@ public class SpringBootstrap extends SpringApplication {
     public final static String BEAN_PLUGIN = "pf4j.plugin";
     public final static String BEAN_IMPORTED_BEAN_NAMES = "sharedBeanNames";
 
+    private static final int STARTUP_STEPS_CAPACITY = 8192;
+
     private static final String PROPERTY_NAME_AUTOCONFIGURE_EXCLUDE = "spring.autoconfigure.exclude";
 
     public static final String[] DEFAULT_EXCLUDE_CONFIGURATIONS = {
@@ -268,6 +266,8 @@ public class SpringBootstrap extends SpringApplication {
         if (presetProperties != null) this.presetProperties.putAll(presetProperties);
         this.presetProperties.put(PROPERTY_NAME_AUTOCONFIGURE_EXCLUDE,
             getExcludeConfigurations());
+        // steps are summarized to PluginStartupReport and drained once plugin is started
+        setApplicationStartup(new BufferingApplicationStartup(STARTUP_STEPS_CAPACITY));
     }
 
     public GenericApplicationContext getMainApplicationContext() {
@@ -343,6 +343,9 @@ public class SpringBootstrap extends SpringApplication {
         Set<String> configurations = new HashSet<>(
             Arrays.asList(DEFAULT_EXCLUDE_CONFIGURATIONS));
         configurations.addAll(plugin.getExcludeConfigurations());
+        // @ConditionalOnClass outcomes shared across plugins
+        configurations.addAll(plugin.getPluginManager().getAutoConfigurationConditionCache()
+            .getUnmatchedAutoConfigurations(pluginClassLoader));
         return configurations.toArray(new String[]{});
     }
 
@@ -374,20 +377,32 @@ public class SpringBootstrap extends SpringApplication {
 
         if (!CollectionUtils.isEmpty(importBeanNames)) {
             for (String beanName : importBeanNames) {
-                // try to import bean from main applicationContext first
-                boolean imported = importBeanFromMainContext(applicationContext, beanName);
-                // not found, try to import bean from dependent applicationContext
-                if (!imported) imported = importBeanFromDependentPlugin(applicationContext, beanName);
-                if (!imported) log.error("Bean {} is not found", beanName);
+                StartupStep step = getApplicationStartup()
+                    .start(PluginStartupReport.STEP_IMPORT_BEAN).tag("bean", beanName);
+                try {
+                    // try to import bean from main applicationContext first
+                    boolean imported = importBeanFromMainContext(applicationContext, beanName);
+                    // not found, try to import bean from dependent applicationContext
+                    if (!imported) imported = importBeanFromDependentPlugin(applicationContext, beanName);
+                    if (!imported) log.error("Bean {} is not found", beanName);
+                } finally {
+                    step.end();
+                }
             }
         }
         if (!CollectionUtils.isEmpty(importBeanClasses)) {
             for (Class<?> beanClass : importBeanClasses) {
-                // try to import bean from main applicationContext first
-                boolean imported = importBeanFromMainContext(applicationContext, beanClass);
-                // not found, try to import bean from dependent applicationContext
-                if (!imported) imported = importBeanFromDependentPlugin(applicationContext, beanClass);
-                if (!imported) log.error("Bean {} is not found", beanClass);
+                StartupStep step = getApplicationStartup()
+                    .start(PluginStartupReport.STEP_IMPORT_BEAN).tag("bean", beanClass.getName());
+                try {
+                    // try to import bean from main applicationContext first
+                    boolean imported = importBeanFromMainContext(applicationContext, beanClass);
+                    // not found, try to import bean from dependent applicationContext
+                    if (!imported) imported = importBeanFromDependentPlugin(applicationContext, beanClass);
+                    if (!imported) log.error("Bean {} is not found", beanClass);
+                } finally {
+                    step.end();
+                }
             }
         }
 
@@ -398,6 +413,11 @@ public class SpringBootstrap extends SpringApplication {
     @Override
     protected void afterRefresh(ConfigurableApplicationContext context, ApplicationArguments args) {
         context.getBeanFactory().registerSingleton(BEAN_IMPORTED_BEAN_NAMES, importedBeanNames);
+        if (context.getBeanFactory() instanceof PluginListableBeanFactory) {
+            log.debug("Plugin {} skipped {} class loading attempts on predicting bean types",
+                plugin.getWrapper().getPluginId(),
+                ((PluginListableBeanFactory) context.getBeanFactory()).getAvoidedClassLoadingCount());
+        }
     }
 
     private void hackBeanFactory(ApplicationContext applicationContext) {
@@ -419,16 +439,6 @@ public class SpringBootstrap extends SpringApplication {
         }
     }
 
-    private <T> BiFunction<T, DynamicType.Builder<T>, DynamicType.Builder<T>> beanProxyHandler() {
-        return (source, builder) -> builder
-            .method(ElementMatchers.any())
-                .intercept(InvocationHandlerAdapter.of(new ProxyInvocationHandler(source)))
-            .method(ElementMatchers.anyOf(
-                BeanUtil.getMethod(InitializingBean.class, "afterPropertiesSet"),
-                BeanUtil.getMethod(DisposableBean.class, "destroy")))
-            .intercept(InvocationHandlerAdapter.of(new OmitInvocationHandler()));
-    }
-
     /**
      * wrap to proxy to prevent plugin application BeanFactory affect imported beans
      * AOP proxy bean couldn't wrap by another layer of proxy
@@ -437,7 +447,7 @@ public class SpringBootstrap extends SpringApplication {
         if (((bean instanceof InitializingBean) || (bean instanceof DisposableBean))
             && !AopUtils.isCglibProxy(bean)) {
             try {
-                bean = BeanUtil.createProxy(bean, beanProxyHandler());
+                bean = plugin.getPluginManager().getSharedBeanProxyCache().createProxy(bean);
             } catch (Throwable ex) {
                     /* TODO ByteBuddy couldn't deal with private inner class like:
                         - org.springframework.orm.jpa.JpaTransactionManager$JpaTransactionObject */
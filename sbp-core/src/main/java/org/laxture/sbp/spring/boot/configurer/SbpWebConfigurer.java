@@ -18,8 +18,10 @@ package org.laxture.sbp.spring.boot.configurer;
 import org.laxture.sbp.SpringBootPlugin;
 import org.laxture.sbp.internal.PluginRequestMappingAdapter;
 import org.laxture.sbp.spring.boot.IPluginConfigurer;
+import org.laxture.sbp.spring.boot.PluginStartupReport;
 import org.pf4j.PluginWrapper;
 import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.core.metrics.StartupStep;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.RestController;
 
@@ -35,8 +37,14 @@ public class SbpWebConfigurer implements IPluginConfigurer {
 
     @Override
     public void onStart(SpringBootPlugin plugin) {
-        getMainRequestMapping(plugin).registerControllers(plugin);
-        getMainRequestMapping(plugin).registerRouterFunction(plugin);
+        StartupStep step = plugin.getApplicationContext().getApplicationStartup()
+            .start(PluginStartupReport.STEP_REGISTER_CONTROLLERS);
+        try {
+            getMainRequestMapping(plugin).registerControllers(plugin);
+            getMainRequestMapping(plugin).registerRouterFunction(plugin);
+        } finally {
+            step.end();
+        }
     }
 
     @Override
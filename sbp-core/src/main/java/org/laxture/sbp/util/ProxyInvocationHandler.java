@@ -16,7 +16,10 @@
 package org.laxture.sbp.util;
 
 import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * @author <a href="https://github.com/hank-cp">Hank CP</a>
@@ -25,13 +28,23 @@ public class ProxyInvocationHandler implements InvocationHandler {
 
     private final Object sourceObj;
 
+    private final Map<Method, Boolean> accessibleMethods = new ConcurrentHashMap<>();
+
     public ProxyInvocationHandler(Object sourceObj) {
         this.sourceObj = sourceObj;
     }
 
     @Override
     public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-        method.setAccessible(true);
-        return method.invoke(this.sourceObj, args);
+        // recorded only after set accessible, concurrent first calls wait for it
+        accessibleMethods.computeIfAbsent(method, m -> {
+            m.setAccessible(true);
+            return Boolean.TRUE;
+        });
+        try {
+            return method.invoke(this.sourceObj, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
     }
 }
@@ -19,46 +19,60 @@ import org.springframework.beans.factory.BeanFactory;
 import org.springframework.boot.autoconfigure.AutoConfigurationPackages;
 import org.springframework.boot.autoconfigure.domain.EntityScanPackages;
 import org.springframework.context.ApplicationContext;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.ResourceLoader;
 import org.springframework.lang.Nullable;
 import org.springframework.orm.jpa.persistenceunit.PersistenceManagedTypes;
 import org.springframework.orm.jpa.persistenceunit.PersistenceManagedTypesScanner;
 import org.springframework.util.StringUtils;
 
+import java.lang.ref.WeakReference;
 import java.net.URL;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 
 /**
+ * Managed types of main app and plugins, registered by owner.
+ * <p>
+ * Scanned types of a plugin are kept after it's unregistered, so it won't scan
+ * model packages again when plugin is restarted, or to find out types to remove.
+ * They are scanned again only if plugin is reloaded by a new class loader.
+ *
  * @author <a href="https://github.com/hank-cp">Hank CP</a>
  */
 public class PluginPersistenceManagedTypes implements PersistenceManagedTypes {
 
-    private final List<String> managedClassNames = Collections.synchronizedList(new ArrayList<>());
+    private static final String MAIN_APP = "";
+
+    // plugin id -> last scanned types
+    private final Map<String, ScannedTypes> scannedTypes = new ConcurrentHashMap<>();
 
-    private final List<String> managedPackages = Collections.synchronizedList(new ArrayList<>());
+    // owner -> types in use, main app registered as MAIN_APP
+    private final Map<String, ScannedTypes> registeredTypes = new ConcurrentHashMap<>();
 
     public void registerPackage(ApplicationContext applicationContext) {
         String[] packagesToScan = getPackagesToScan(applicationContext);
-        this.registerPackage(applicationContext, packagesToScan);
+        registeredTypes.put(MAIN_APP, ScannedTypes.scan(applicationContext, null, packagesToScan));
     }
 
-    public void registerPackage(ApplicationContext applicationContext, String[] packagesToScan) {
-        PersistenceManagedTypes packageTypes = new PersistenceManagedTypesScanner(applicationContext).scan(packagesToScan);
-        // TODO remove existed classes first, maybe from failed staging plugin
-        this.managedClassNames.addAll(packageTypes.getManagedClassNames());
-        this.managedPackages.addAll(packageTypes.getManagedPackages());
+    /**
+     * Register managed types of plugin model packages, replacing types left by previous
+     * registration of the same plugin, e.g. a failed starting.
+     */
+    public void registerPackage(String pluginId, ClassLoader pluginClassLoader, String[] packagesToScan) {
+        ScannedTypes types = scannedTypes.compute(pluginId, (id, scanned) ->
+            scanned != null && scanned.isScannedBy(pluginClassLoader, packagesToScan) ? scanned
+                : ScannedTypes.scan(new DefaultResourceLoader(pluginClassLoader), pluginClassLoader, packagesToScan));
+        registeredTypes.put(pluginId, types);
     }
 
     public void unregisterPackage(ApplicationContext applicationContext) {
-        String[] packagesToScan = getPackagesToScan(applicationContext);
-        this.unregisterPackage(applicationContext, packagesToScan);
+        registeredTypes.remove(MAIN_APP);
     }
 
-    public void unregisterPackage(ApplicationContext applicationContext, String[] packagesToScan) {
-        PersistenceManagedTypes packageTypes = new PersistenceManagedTypesScanner(applicationContext).scan(packagesToScan);
-        this.managedClassNames.removeAll(packageTypes.getManagedClassNames());
-        this.managedPackages.removeAll(packageTypes.getManagedPackages());
+    public void unregisterPackage(String pluginId) {
+        registeredTypes.remove(pluginId);
     }
 
     private static String[] getPackagesToScan(BeanFactory beanFactory) {
@@ -71,12 +85,20 @@ public class PluginPersistenceManagedTypes implements PersistenceManagedTypes {
 
     @Override
     public List<String> getManagedClassNames() {
-        return this.managedClassNames;
+        return collect(types -> types.managedClassNames);
     }
 
     @Override
     public List<String> getManagedPackages() {
-        return this.managedPackages;
+        return collect(types -> types.managedPackages);
+    }
+
+    private List<String> collect(Function<ScannedTypes, Set<String>> getter) {
+        Set<String> result = new LinkedHashSet<>();
+        ScannedTypes mainAppTypes = registeredTypes.get(MAIN_APP);
+        if (mainAppTypes != null) result.addAll(getter.apply(mainAppTypes));
+        registeredTypes.values().forEach(types -> result.addAll(getter.apply(types)));
+        return new ArrayList<>(result);
     }
 
     @Override
@@ -84,4 +106,28 @@ public class PluginPersistenceManagedTypes implements PersistenceManagedTypes {
     public URL getPersistenceUnitRootUrl() {
         return null;
     }
+
+    private static class ScannedTypes {
+        // don't keep class loader of unloaded plugin alive
+        private final WeakReference<ClassLoader> classLoader;
+        private final String[] packagesToScan;
+        private final Set<String> managedClassNames;
+        private final Set<String> managedPackages;
+
+        private ScannedTypes(ClassLoader classLoader, String[] packagesToScan, PersistenceManagedTypes types) {
+            this.classLoader = new WeakReference<>(classLoader);
+            this.packagesToScan = packagesToScan.clone();
+            this.managedClassNames = Collections.unmodifiableSet(new LinkedHashSet<>(types.getManagedClassNames()));
+            this.managedPackages = Collections.unmodifiableSet(new LinkedHashSet<>(types.getManagedPackages()));
+        }
+
+        static ScannedTypes scan(ResourceLoader resourceLoader, ClassLoader classLoader, String[] packagesToScan) {
+            return new ScannedTypes(classLoader, packagesToScan,
+                new PersistenceManagedTypesScanner(resourceLoader).scan(packagesToScan));
+        }
+
+        boolean isScannedBy(ClassLoader classLoader, String[] packagesToScan) {
+            return this.classLoader.get() == classLoader && Arrays.equals(this.packagesToScan, packagesToScan);
+        }
+    }
 }
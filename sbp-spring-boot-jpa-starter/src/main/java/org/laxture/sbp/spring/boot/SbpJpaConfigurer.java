@@ -15,6 +15,7 @@
  */
 package org.laxture.sbp.spring.boot;
 
+import org.laxture.sbp.SpringBootPlugin;
 import org.pf4j.PluginWrapper;
 import org.springframework.context.support.GenericApplicationContext;
 import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
@@ -55,25 +56,40 @@ public class SbpJpaConfigurer implements IPluginConfigurer {
         bootstrap.importBeanFromMainContext(pluginApplicationContext, "entityManagerFactory");
         bootstrap.importBeanFromMainContext(pluginApplicationContext, "openEntityManagerInViewInterceptorConfigurer");
         bootstrap.importBeanFromMainContext(pluginApplicationContext, "openEntityManagerInViewInterceptor");
+    }
 
-        // scan & register model types
-        PluginPersistenceManagedTypes persistenceManagedTypes = (PluginPersistenceManagedTypes)
-            bootstrap.getMainApplicationContext().getBean("persistenceManagedTypes");
-        persistenceManagedTypes.registerPackage(pluginApplicationContext, modelPackages);
+    @Override
+    public void onPrepare(SpringBootPlugin plugin) {
+        GenericApplicationContext mainApplicationContext = plugin.getMainApplicationContext();
+        ClassLoader pluginClassLoader = plugin.getWrapper().getPluginClassLoader();
+        // scan & register model types, scanned only once for each plugin class loader
+        getPersistenceManagedTypes(mainApplicationContext)
+            .registerPackage(plugin.getWrapper().getPluginId(), pluginClassLoader, modelPackages);
         // register classloader
         LocalContainerEntityManagerFactoryBean entityManagerFactory =
-            bootstrap.getMainApplicationContext().getBean(LocalContainerEntityManagerFactoryBean.class);
-        PluginEntityManagerFactoryBeanRegister.registerClassloader(entityManagerFactory, bootstrap.getClassLoader());
-        // rebuild hibernate bootstrap
-        entityManagerFactory.afterPropertiesSet();
+            mainApplicationContext.getBean(LocalContainerEntityManagerFactoryBean.class);
+        PluginEntityManagerFactoryBeanRegister.registerClassloader(entityManagerFactory, pluginClassLoader);
+        // rebuild hibernate bootstrap once for all plugins prepared together,
+        // before their repositories are created.
+        plugin.getPluginManager().deferRefresh(entityManagerFactory, entityManagerFactory::afterPropertiesSet);
     }
 
-    // TODO unregister model types on plugin stopped
+    @Override
+    public void onStop(SpringBootPlugin plugin) {
+        // types are dropped from EntityManagerFactory on next rebuild
+        getPersistenceManagedTypes(plugin.getMainApplicationContext())
+            .unregisterPackage(plugin.getWrapper().getPluginId());
+    }
 
     @Override
     public void releaseLeaveOverResource(PluginWrapper plugin, GenericApplicationContext mainAppCtx) {
+        getPersistenceManagedTypes(mainAppCtx).unregisterPackage(plugin.getPluginId());
         LocalContainerEntityManagerFactoryBean entityManagerFactory =
             mainAppCtx.getBean(LocalContainerEntityManagerFactoryBean.class);
         PluginEntityManagerFactoryBeanRegister.unregisterClassloader(entityManagerFactory, plugin.getPluginClassLoader());
     }
+
+    private static PluginPersistenceManagedTypes getPersistenceManagedTypes(GenericApplicationContext mainAppCtx) {
+        return (PluginPersistenceManagedTypes) mainAppCtx.getBean("persistenceManagedTypes");
+    }
 }
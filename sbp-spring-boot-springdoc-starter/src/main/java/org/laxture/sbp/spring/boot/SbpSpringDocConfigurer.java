@@ -15,6 +15,9 @@
  */
 package org.laxture.sbp.spring.boot;
 
+import io.swagger.v3.core.util.Json;
+import io.swagger.v3.oas.models.OpenAPI;
+import lombok.extern.slf4j.Slf4j;
 import org.laxture.sbp.SpringBootPlugin;
 import org.laxture.sbp.spring.boot.webflux.RegistrableMultipleOpenApiWebFluxResource;
 import org.laxture.sbp.util.BeanUtil;
@@ -23,13 +26,19 @@ import org.springdoc.core.properties.SpringDocConfigProperties;
 import org.springdoc.core.service.OpenAPIService;
 import org.springframework.context.support.GenericApplicationContext;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
 import java.util.Map;
 
 /**
  * @author <a href="https://github.com/hank-cp">Hank CP</a>
  */
+@Slf4j
 public class SbpSpringDocConfigurer implements IPluginConfigurer {
 
+    public static final String PREGENERATED_DOCUMENT_LOCATION = "META-INF/sbp-openapi/";
+
     @Override
     public String[] excludeConfigurations() {
         return new String[] {
@@ -57,9 +66,13 @@ public class SbpSpringDocConfigurer implements IPluginConfigurer {
             RegistrableMultipleOpenApiWebFluxResource openApiResource =
                 plugin.getMainApplicationContext().getBean(RegistrableMultipleOpenApiWebFluxResource.class);
             GroupedOpenApi groupedOpenApi = plugin.getApplicationContext().getBean(GroupedOpenApi.class);
-            openApiResource.registerPlugin(plugin, groupedOpenApi);
+            // only resource of plugin group is rebuilt, other groups keep cached documents
+            openApiResource.registerPlugin(plugin, groupedOpenApi,
+                loadPregeneratedDocument(plugin, groupedOpenApi.getGroup()));
+        } else {
+            plugin.getPluginManager().deferRefresh(OpenAPIService.class,
+                () -> refreshCacheIfNeeded(plugin.getMainApplicationContext()));
         }
-        refreshCacheIfNeeded(plugin.getMainApplicationContext());
     }
 
     @Override
@@ -69,8 +82,28 @@ public class SbpSpringDocConfigurer implements IPluginConfigurer {
                 plugin.getMainApplicationContext().getBean(RegistrableMultipleOpenApiWebFluxResource.class);
             GroupedOpenApi groupedOpenApi = plugin.getApplicationContext().getBean(GroupedOpenApi.class);
             openApiResource.unregisterPlugin(groupedOpenApi.getGroup());
+        } else {
+            plugin.getPluginManager().deferRefresh(OpenAPIService.class,
+                () -> refreshCacheIfNeeded(plugin.getMainApplicationContext()));
+        }
+    }
+
+    /**
+     * Only used by WebFlux main app, by {@link RegistrableMultipleOpenApiWebFluxResource}.
+     *
+     * @return document generated at plugin build time, at {@link #PREGENERATED_DOCUMENT_LOCATION}`<group>.json`,
+     * or null if not found.
+     */
+    public static OpenAPI loadPregeneratedDocument(SpringBootPlugin plugin, String group) {
+        URL url = plugin.getWrapper().getPluginClassLoader()
+            .getResource(PREGENERATED_DOCUMENT_LOCATION + group + ".json");
+        if (url == null) return null;
+        try (InputStream in = url.openStream()) {
+            return Json.mapper().readValue(in, OpenAPI.class);
+        } catch (IOException e) {
+            log.warn("Failed to load pre-generated api doc {}, fallback to generate it at runtime", url, e);
+            return null;
         }
-        refreshCacheIfNeeded(plugin.getMainApplicationContext());
     }
 
     public void refreshCacheIfNeeded(GenericApplicationContext applicationContext) {
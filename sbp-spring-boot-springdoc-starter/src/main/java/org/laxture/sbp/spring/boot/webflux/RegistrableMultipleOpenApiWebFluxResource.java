@@ -15,6 +15,7 @@
  */
 package org.laxture.sbp.spring.boot.webflux;
 
+import io.swagger.v3.oas.models.OpenAPI;
 import org.laxture.sbp.SpringBootPlugin;
 import org.laxture.sbp.util.BeanUtil;
 import org.springdoc.api.AbstractOpenApiResource;
@@ -36,10 +37,12 @@ import org.springframework.context.ApplicationContext;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -51,8 +54,15 @@ public class RegistrableMultipleOpenApiWebFluxResource extends MultipleOpenApiWe
 
     private final Map<String, List<Class<?>>> controllerMap = Collections.synchronizedMap(new HashMap<>());
 
+    // group -> document generated at plugin build time
+    private final Map<String, OpenAPI> pregeneratedDocuments = new ConcurrentHashMap<>();
+
     private final ApplicationContext applicationContext;
 
+    private Collection<GlobalOpenApiCustomizer> globalOpenApiCustomizers;
+    private Collection<GlobalOperationCustomizer> globalOperationCustomizers;
+    private Collection<GlobalOpenApiMethodFilter> globalOpenApiMethodFilters;
+
     public RegistrableMultipleOpenApiWebFluxResource(ApplicationContext applicationContext,
                                                      List<GroupedOpenApi> groupedOpenApis,
                                                      ObjectFactory<OpenAPIService> defaultOpenAPIBuilder,
@@ -75,6 +85,10 @@ public class RegistrableMultipleOpenApiWebFluxResource extends MultipleOpenApiWe
         return BeanUtil.getFieldValue(this, "groupedOpenApis");
     }
 
+    Map<String, OpenApiResource> getGroupedOpenApiResources() {
+        return BeanUtil.getFieldValue(this, "groupedOpenApiResources");
+    }
+
     void setGroupedOpenApiResources(Map<String, OpenApiResource> groupedOpenApiResources) {
         BeanUtil.setFieldValue(this, "groupedOpenApiResources", groupedOpenApiResources);
     }
@@ -88,28 +102,38 @@ public class RegistrableMultipleOpenApiWebFluxResource extends MultipleOpenApiWe
     //*************************************************************************
 
     public void afterPropertiesSet() {
-        Map<String, GlobalOpenApiCustomizer> globalOpenApiCustomizerMap = applicationContext.getBeansOfType(GlobalOpenApiCustomizer.class);
-        Map<String, GlobalOperationCustomizer> globalOperationCustomizerMap = applicationContext.getBeansOfType(GlobalOperationCustomizer.class);
-        Map<String, GlobalOpenApiMethodFilter> globalOpenApiMethodFilterMap = applicationContext.getBeansOfType(GlobalOpenApiMethodFilter.class);
-
-        this.getGroupedOpenApis().forEach(groupedOpenApi -> groupedOpenApi
-            .addAllOpenApiCustomizer(globalOpenApiCustomizerMap.values())
-            .addAllOperationCustomizer(globalOperationCustomizerMap.values())
-            .addAllOpenApiMethodFilter(globalOpenApiMethodFilterMap.values())
-        );
-
-        setGroupedOpenApiResources(getGroupedOpenApis().stream()
-            .collect(Collectors.toMap(GroupedOpenApi::getGroup, item ->
-                {
-                    SpringDocConfigProperties.GroupConfig groupConfig = new SpringDocConfigProperties.GroupConfig(
-                        item.getGroup(), item.getPathsToMatch(), item.getPackagesToScan(),
-                        item.getPackagesToExclude(), item.getPathsToExclude(),
-                        item.getProducesToMatch(), item.getConsumesToMatch(),
-                        item.getHeadersToMatch(), item.getDisplayName());
-                    getSpringDocConfigProperties().addGroupConfig(groupConfig);
-                    return buildWebFluxOpenApiResourceHack(item);
-                }
-            )));
+        this.globalOpenApiCustomizers = applicationContext.getBeansOfType(GlobalOpenApiCustomizer.class).values();
+        this.globalOperationCustomizers = applicationContext.getBeansOfType(GlobalOperationCustomizer.class).values();
+        this.globalOpenApiMethodFilters = applicationContext.getBeansOfType(GlobalOpenApiMethodFilter.class).values();
+
+        Map<String, OpenApiResource> groupedOpenApiResources = new ConcurrentHashMap<>();
+        this.getGroupedOpenApis().forEach(groupedOpenApi ->
+            groupedOpenApiResources.put(groupedOpenApi.getGroup(), buildGroupedOpenApiResource(groupedOpenApi)));
+        setGroupedOpenApiResources(groupedOpenApiResources);
+    }
+
+    /**
+     * Build resource of a single group, so resources and cached documents of other
+     * groups are kept.
+     */
+    private OpenApiResource buildGroupedOpenApiResource(GroupedOpenApi item) {
+        item.addAllOpenApiCustomizer(globalOpenApiCustomizers)
+            .addAllOperationCustomizer(globalOperationCustomizers)
+            .addAllOpenApiMethodFilter(globalOpenApiMethodFilters);
+        SpringDocConfigProperties.GroupConfig groupConfig = new SpringDocConfigProperties.GroupConfig(
+            item.getGroup(), item.getPathsToMatch(), item.getPackagesToScan(),
+            item.getPackagesToExclude(), item.getPathsToExclude(),
+            item.getProducesToMatch(), item.getConsumesToMatch(),
+            item.getHeadersToMatch(), item.getDisplayName());
+        getSpringDocConfigProperties().addGroupConfig(groupConfig);
+        OpenAPI pregeneratedDocument = pregeneratedDocuments.get(item.getGroup());
+        if (pregeneratedDocument == null) return buildWebFluxOpenApiResourceHack(item);
+
+        // serve pre-generated document as cached one, instead of introspecting controllers
+        OpenApiResource res = BeanUtil.callMethod(this, "buildWebFluxOpenApiResource", item);
+        OpenAPIService openAPIService = BeanUtil.getFieldValue(res, "openAPIService");
+        BeanUtil.setFieldValue(openAPIService, "cachedOpenAPI", new PregeneratedOpenApiCache(pregeneratedDocument));
+        return res;
     }
 
     private OpenApiResource buildWebFluxOpenApiResourceHack(GroupedOpenApi item) {
@@ -122,6 +146,18 @@ public class RegistrableMultipleOpenApiWebFluxResource extends MultipleOpenApiWe
 
     public void registerPlugin(SpringBootPlugin plugin,
                                GroupedOpenApi groupedOpenApi) {
+        registerPlugin(plugin, groupedOpenApi, null);
+    }
+
+    /**
+     * @param pregeneratedDocument document generated at plugin build time, which is
+     *                             served as is if springdoc cache is enabled.
+     */
+    public void registerPlugin(SpringBootPlugin plugin,
+                               GroupedOpenApi groupedOpenApi,
+                               OpenAPI pregeneratedDocument) {
+        removeGroup(groupedOpenApi.getGroup());
+        if (pregeneratedDocument != null) pregeneratedDocuments.put(groupedOpenApi.getGroup(), pregeneratedDocument);
         getGroupedOpenApis().add(groupedOpenApi);
         this.controllerMap.put(groupedOpenApi.getGroup(), Stream.concat(Stream.concat( //Stream.concat(
             plugin.getApplicationContext().getBeansOfType(Controller.class).values().stream(),
@@ -131,13 +167,39 @@ public class RegistrableMultipleOpenApiWebFluxResource extends MultipleOpenApiWe
             .map(Object::getClass)
             .filter(controllerClass -> controllerClass.getClassLoader() == plugin.getWrapper().getPluginClassLoader())
             .collect(Collectors.toList()));
-        this.afterPropertiesSet();
+        getGroupedOpenApiResources().put(groupedOpenApi.getGroup(), buildGroupedOpenApiResource(groupedOpenApi));
     }
 
     public void unregisterPlugin(String group) {
-        getGroupedOpenApis().removeIf(item -> item.getGroup().equals(group));
+        removeGroup(group);
         this.controllerMap.remove(group);
-        this.afterPropertiesSet();
+    }
+
+    private void removeGroup(String group) {
+        pregeneratedDocuments.remove(group);
+        getGroupedOpenApis().removeIf(item -> item.getGroup().equals(group));
+        getGroupedOpenApiResources().remove(group);
+        getSpringDocConfigProperties().getGroupConfigs().removeIf(groupConfig -> group.equals(groupConfig.getGroup()));
+    }
+
+    /**
+     * Cache of {@link OpenAPIService} returning pre-generated document for any locale.
+     */
+    private static class PregeneratedOpenApiCache extends HashMap<String, OpenAPI> {
+
+        private static final long serialVersionUID = 5023581644367728162L;
+
+        private final OpenAPI document;
+
+        PregeneratedOpenApiCache(OpenAPI document) {
+            this.document = document;
+        }
+
+        @Override
+        public OpenAPI get(Object key) {
+            OpenAPI openAPI = super.get(key);
+            return openAPI != null ? openAPI : document;
+        }
     }
 
 }
@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2019-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.laxture.sbp.spring.boot;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.laxture.sbp.SpringBootPluginManager;
+import org.laxture.sbp.internal.PluginClassLoaderLeakDetector;
+
+/**
+ * Expose count of leaked plugin class loaders as Micrometer gauge `sbp.plugin.classloader.leaked`,
+ * and count of unloaded plugin class loaders not collected yet as `sbp.plugin.classloader.released`.
+ *
+ * @author <a href="https://github.com/hank-cp">Hank CP</a>
+ */
+public class PluginClassLoaderLeakMetrics implements MeterBinder {
+
+    public static final String LEAKED_METRIC_NAME = "sbp.plugin.classloader.leaked";
+    public static final String RELEASED_METRIC_NAME = "sbp.plugin.classloader.released";
+
+    private final SpringBootPluginManager pluginManager;
+
+    public PluginClassLoaderLeakMetrics(SpringBootPluginManager pluginManager) {
+        this.pluginManager = pluginManager;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder(LEAKED_METRIC_NAME, pluginManager, manager -> {
+                PluginClassLoaderLeakDetector leakDetector = manager.getClassLoaderLeakDetector();
+                return leakDetector != null ? leakDetector.getLeakedCount() : 0;
+            })
+            .description("Plugin class loaders still reachable after grace period since unloaded")
+            .register(registry);
+        Gauge.builder(RELEASED_METRIC_NAME, pluginManager, manager -> {
+                PluginClassLoaderLeakDetector leakDetector = manager.getClassLoaderLeakDetector();
+                return leakDetector != null ? leakDetector.getReleasedCount() : 0;
+            })
+            .description("Class loaders of unloaded plugins not collected yet")
+            .register(registry);
+    }
+}
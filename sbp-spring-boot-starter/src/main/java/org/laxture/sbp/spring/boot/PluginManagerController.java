@@ -16,16 +16,23 @@
 package org.laxture.sbp.spring.boot;
 
 import org.laxture.sbp.SpringBootPluginManager;
+import org.laxture.sbp.internal.PluginClassLoaderLeakDetector;
+import org.laxture.sbp.internal.PluginInventory;
+import org.laxture.sbp.spring.boot.model.PluginChanges;
 import org.laxture.sbp.spring.boot.model.PluginInfo;
 import org.pf4j.PluginDescriptor;
-import org.pf4j.PluginRuntimeException;
 import org.pf4j.PluginState;
 import org.pf4j.PluginWrapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.stream.Collectors;
 
 /**
@@ -37,40 +44,72 @@ public class PluginManagerController {
     @Autowired
     private SpringBootPluginManager pluginManager;
 
+    // revisions restart from 0 with the application, tell them apart from previous run
+    private final String eTagEpoch = Long.toHexString(System.currentTimeMillis());
+
+    /**
+     * Served from {@link PluginInventory}, without reading plugin files. Request with
+     * `If-None-Match` gets `304 Not Modified` if ETag is not changed.
+     */
     @GetMapping(value = "${spring.sbp.controller.base-path:/sbp}/list")
-    public List<PluginInfo> list() {
+    public ResponseEntity<List<PluginInfo>> list() {
+        PluginInventory inventory = pluginManager.getPluginInventory();
+        // taken before listing, so changes made meanwhile are not hidden by the ETag
+        String eTag = eTag(inventory);
         List<PluginWrapper> loadedPlugins = pluginManager.getPlugins();
 
         // loaded plugins
         List<PluginInfo> plugins = loadedPlugins.stream().map(pluginWrapper -> {
                     PluginDescriptor descriptor = pluginWrapper.getDescriptor();
-                    PluginDescriptor latestDescriptor = null;
-                    try {
-                        latestDescriptor = pluginManager.getPluginDescriptorFinder()
-                                .find(pluginWrapper.getPluginPath());
-                    } catch (PluginRuntimeException ignored) {}
+                    PluginDescriptor latestDescriptor = inventory.find(pluginWrapper.getPluginPath());
                     String newVersion = null;
                     if (latestDescriptor != null && !descriptor.getVersion().equals(latestDescriptor.getVersion())) {
                         newVersion = latestDescriptor.getVersion();
                     }
 
-                    return PluginInfo.build(descriptor,
-                            pluginWrapper.getPluginState(), newVersion,
+                    return PluginInfo.build(descriptor, pluginWrapper.getPluginState(),
+                            pluginManager.isHibernated(pluginWrapper.getPluginId()), newVersion,
                             pluginManager.getPluginStartingError(pluginWrapper.getPluginId()),
                             latestDescriptor == null);
                 }).collect(Collectors.toList());
 
         // yet not loaded plugins
-        List<Path> pluginPaths = pluginManager.getPluginRepository().getPluginPaths();
+        List<Path> pluginPaths = inventory.getPluginPaths();
         plugins.addAll(pluginPaths.stream().filter(path ->
             loadedPlugins.stream().noneMatch(plugin -> plugin.getPluginPath().equals(path))
-        ).map(path -> {
-            PluginDescriptor descriptor = pluginManager
-                    .getPluginDescriptorFinder().find(path);
-            return PluginInfo.build(descriptor, null, null, null, false);
-        }).collect(Collectors.toList()));
+        ).map(inventory::find).filter(Objects::nonNull).map(descriptor ->
+            PluginInfo.build(descriptor, null, null, null, false)
+        ).collect(Collectors.toList()));
+
+        // changes found by listing itself, e.g. plugin file replaced while not watching
+        if (!eTag.equals(eTag(inventory))) return ResponseEntity.ok().body(plugins);
+        // conditional request is handled by framework with ETag of response entity
+        return ResponseEntity.ok().eTag(eTag).body(plugins);
+    }
 
-        return plugins;
+    private String eTag(PluginInventory inventory) {
+        return String.format("W/\"%s-%x-%x-%x\"", eTagEpoch, inventory.getRevision(),
+            pluginManager.getPluginsRevision(), pluginManager.getPluginStatesRevision());
+    }
+
+    @GetMapping(value = "${spring.sbp.controller.base-path:/sbp}/startup")
+    public List<PluginStartupReport> startup() {
+        List<PluginStartupReport> reports = pluginManager.getPluginStartupReports();
+        reports.sort(Comparator.comparingLong((PluginStartupReport report) -> report.totalMillis).reversed());
+        return reports;
+    }
+
+    @GetMapping(value = "${spring.sbp.controller.base-path:/sbp}/startup/{pluginId}")
+    public PluginStartupReport startup(@PathVariable String pluginId) {
+        return pluginManager.getPluginStartupReport(pluginId);
+    }
+
+    @GetMapping(value = "${spring.sbp.controller.base-path:/sbp}/leaks")
+    public List<PluginClassLoaderLeak> leaks() {
+        PluginClassLoaderLeakDetector leakDetector = pluginManager.getClassLoaderLeakDetector();
+        if (leakDetector == null) return Collections.emptyList();
+        leakDetector.check();
+        return leakDetector.getLeaks();
     }
 
     @PostMapping(value = "${spring.sbp.controller.base-path:/sbp}/start/{pluginId}")
@@ -91,6 +130,11 @@ public class PluginManagerController {
         return pluginState == PluginState.STARTED ? 0 : 1;
     }
 
+    @PostMapping(value = "${spring.sbp.controller.base-path:/sbp}/batch")
+    public Map<String, PluginState> batch(@RequestBody PluginChanges changes) {
+        return pluginManager.applyChanges(changes.start, changes.stop, changes.reload);
+    }
+
     @PostMapping(value = "${spring.sbp.controller.base-path:/sbp}/reload-all")
     public int reloadAll() {
         pluginManager.reloadPlugins(false );
@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2019-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.laxture.sbp.spring.boot;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.laxture.sbp.SpringBootPluginManager;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Record {@link PluginStartupReport} of plugins as Micrometer timers `sbp.plugin.startup`,
+ * tagged by `plugin` and `phase`. Phase `total` is the whole plugin starting time.
+ *
+ * @author <a href="https://github.com/hank-cp">Hank CP</a>
+ */
+public class PluginStartupMetrics {
+
+    public static final String METRIC_NAME = "sbp.plugin.startup";
+
+    private final SpringBootPluginManager pluginManager;
+
+    private final MeterRegistry meterRegistry;
+
+    // plugin id -> last recorded report
+    private final Map<String, PluginStartupReport> recordedReports = new ConcurrentHashMap<>();
+
+    public PluginStartupMetrics(SpringBootPluginManager pluginManager, MeterRegistry meterRegistry) {
+        this.pluginManager = pluginManager;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @EventListener({ ApplicationReadyEvent.class, SbpPluginStateChangedEvent.class })
+    public void record() {
+        for (PluginStartupReport report : pluginManager.getPluginStartupReports()) {
+            if (recordedReports.put(report.pluginId, report) == report) continue;
+            record(report.pluginId, "total", report.totalMillis);
+            for (PluginStartupReport.Phase phase : report.phases) {
+                record(report.pluginId, phase.name, phase.millis);
+            }
+        }
+    }
+
+    private void record(String pluginId, String phase, long millis) {
+        Timer.builder(METRIC_NAME)
+            .description("Plugin startup time by phase")
+            .tag("plugin", pluginId)
+            .tag("phase", phase)
+            .register(meterRegistry)
+            .record(millis, TimeUnit.MILLISECONDS);
+    }
+}
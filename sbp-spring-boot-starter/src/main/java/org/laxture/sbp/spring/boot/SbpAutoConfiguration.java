@@ -21,6 +21,7 @@ import org.laxture.sbp.internal.MainAppReadyListener;
 import org.laxture.sbp.internal.MainAppStartedListener;
 import org.laxture.sbp.internal.SpringBootPluginClassLoader;
 import org.pf4j.*;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
@@ -72,7 +73,8 @@ public class SbpAutoConfiguration {
 
 	@Bean
 	@ConditionalOnMissingBean
-	public SpringBootPluginManager pluginManager(SbpProperties properties) {
+	public SpringBootPluginManager pluginManager(SbpProperties properties,
+												 ObjectProvider<PluginHibernationPolicy> hibernationPolicy) {
 		// Setup RuntimeMode
 		System.setProperty("pf4j.mode", properties.getRuntimeMode().toString());
 
@@ -121,8 +123,8 @@ public class SbpAutoConfiguration {
 							.add(new JarPluginLoader(this) {
 								@Override
 								public ClassLoader loadPlugin(Path pluginPath, PluginDescriptor pluginDescriptor) {
-									PluginClassLoader pluginClassLoader = new SpringBootPluginClassLoader(pluginManager, pluginDescriptor, getClass().getClassLoader());
-									pluginClassLoader.addFile(pluginPath.toFile());
+									SpringBootPluginClassLoader pluginClassLoader = new SpringBootPluginClassLoader(pluginManager, pluginDescriptor, getClass().getClassLoader());
+									pluginClassLoader.addIndexedFile(pluginPath.toFile(), properties.isPersistJarIndex());
 									return pluginClassLoader;
 								}
 							}, this::isNotDevelopment);
@@ -142,6 +144,14 @@ public class SbpAutoConfiguration {
 		profiles.add("plugin"); // set default profile
 		pluginManager.setProfiles(profiles.toArray(new String[] {}));
 		pluginManager.setAutoStartPlugin(properties.isAutoStartPlugin());
+		pluginManager.setPluginStartingThreads(properties.getPluginStartingThreads());
+		pluginManager.setLazyActivation(properties.getActivation() == SbpProperties.Activation.LAZY);
+		pluginManager.setActivationIdleTimeout(properties.getActivationIdleTimeout());
+		pluginManager.setActivationRetryBackoff(properties.getActivationRetryBackoff());
+		pluginManager.setHibernationIdleTimeout(properties.getHibernationIdleTimeout());
+		pluginManager.setLeakDetectionGracePeriod(properties.getLeakDetectionGracePeriod());
+		pluginManager.setWatchPluginsRoot(properties.isWatchPluginsRoot());
+		hibernationPolicy.ifAvailable(pluginManager::setHibernationPolicy);
 		pluginManager.presetProperties(flatProperties(properties.getPluginProperties()));
 		pluginManager.setExactVersionAllowed(properties.isExactVersionAllowed());
 		pluginManager.setSystemVersion(properties.getSystemVersion());
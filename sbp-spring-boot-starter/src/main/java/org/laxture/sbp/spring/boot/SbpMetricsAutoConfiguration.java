@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2019-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.laxture.sbp.spring.boot;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.laxture.sbp.SpringBootPluginManager;
+import org.springframework.boot.autoconfigure.AutoConfigureAfter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Expose sbp metrics to Micrometer, if it's presented in main app.
+ *
+ * @author <a href="https://github.com/hank-cp">Hank CP</a>
+ */
+@Configuration
+@ConditionalOnClass(MeterRegistry.class)
+@ConditionalOnBean({ SpringBootPluginManager.class, MeterRegistry.class })
+@AutoConfigureAfter(value = SbpAutoConfiguration.class, name = {
+	"org.springframework.boot.actuate.autoconfigure.metrics.CompositeMeterRegistryAutoConfiguration",
+	"org.springframework.boot.actuate.autoconfigure.metrics.export.simple.SimpleMetricsExportAutoConfiguration" })
+public class SbpMetricsAutoConfiguration {
+
+	@Bean
+	@ConditionalOnMissingBean
+	public PluginStartupMetrics pluginStartupMetrics(SpringBootPluginManager pluginManager,
+													 MeterRegistry meterRegistry) {
+		return new PluginStartupMetrics(pluginManager, meterRegistry);
+	}
+
+	@Bean
+	@ConditionalOnMissingBean
+	public PluginClassLoaderLeakMetrics pluginClassLoaderLeakMetrics(SpringBootPluginManager pluginManager) {
+		return new PluginClassLoaderLeakMetrics(pluginManager);
+	}
+}
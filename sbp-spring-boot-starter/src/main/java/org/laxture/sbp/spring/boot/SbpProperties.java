@@ -20,7 +20,13 @@ import org.pf4j.PluginLoader;
 import org.pf4j.RuntimeMode;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.ApplicationContext;
+import org.springframework.util.StringUtils;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -45,6 +51,70 @@ public class SbpProperties {
 	 * Auto start plugin when main app is ready
 	 */
 	private boolean autoStartPlugin = true;
+	/**
+	 * Pool size to start plugins in parallel. Plugin will only be started after
+	 * its dependencies are started. Plugins are started one by one if it is less than 2.
+	 */
+	private int pluginStartingThreads = 1;
+	/**
+	 * Max time a web request is held while plugins are loading. Request will be
+	 * answered with 503 and `Retry-After` header once exceeded.
+	 */
+	private Duration loadingWaitTimeout = Duration.ofSeconds(30);
+	/**
+	 * `eager` to start all plugins when main app is started, or `lazy` to start plugins
+	 * declaring path prefixes on first request to them.
+	 */
+	private Activation activation = Activation.EAGER;
+	/**
+	 * Plugins activated lazily are hibernated if not requested for this duration.
+	 * Fall back to `hibernationIdleTimeout` if not set.
+	 */
+	private Duration activationIdleTimeout;
+	/**
+	 * Plugins failed on activation or waking up are not started again by requests
+	 * within this duration, which are answered with 503 and `Retry-After` header.
+	 */
+	private Duration activationRetryBackoff = Duration.ofSeconds(30);
+	/**
+	 * Started plugins are hibernated, i.e. stopped and started again on next request
+	 * or extension lookup, if idle for this duration. Hibernation is disabled if not set.
+	 */
+	private Duration hibernationIdleTimeout;
+	/**
+	 * Class loaders of unloaded plugins still reachable after this grace period
+	 * are reported as leaked. Leak detection is disabled if not set.
+	 */
+	private Duration leakDetectionGracePeriod;
+	/**
+	 * Watch plugins root for changes, so listing plugins reads cached plugin descriptors
+	 * without checking plugin files.
+	 */
+	private boolean watchPluginsRoot = true;
+	/**
+	 * Max entries of plugin static resources chain cache.
+	 */
+	private int resourceCacheSize = 1024;
+	/**
+	 * Time to live of plugin static resources chain cache entries.
+	 */
+	private Duration resourceCacheTtl = Duration.ofHours(1);
+	/**
+	 * Extract plugin static resources to file system when plugin is started, so they
+	 * are served as files instead of being inflated from plugin jar on every request.
+	 */
+	private boolean extractStaticResources = false;
+	/**
+	 * Directory to extract plugin static resources to, a temporary directory is
+	 * created if not set. Extracted resources are deleted on shutdown, and so is
+	 * the directory if nothing else is left in it.
+	 */
+	private String staticResourcesExtractDir;
+	/**
+	 * Generate gzip variants of compressible extracted plugin static resources in
+	 * background after plugin is started. Requires `extractStaticResources`.
+	 */
+	private boolean compressStaticResources = false;
 	/**
 	 * Plugins disabled by default
 	 */
@@ -80,6 +150,11 @@ public class SbpProperties {
 	 * Allows to provide custom plugin loaders.
 	 */
 	private Class<PluginLoader> customPluginLoader;
+	/**
+	 * Persist plugin jar entries index next to the jar as `&lt;jar&gt;.sbpidx`,
+	 * so it doesn't need to be scanned again on restart.
+	 */
+	private boolean persistJarIndex = false;
 	/**
 	 * Profile for plugin Spring {@link ApplicationContext}
 	 */
@@ -94,4 +169,23 @@ public class SbpProperties {
 	 */
 	private String systemVersion = "0.0.0";
 
+	/**
+	 * Create directory to extract plugin static resources to.
+	 * @return null if extracting is disabled.
+	 */
+	public Path createStaticResourcesExtractDir() {
+		if (!extractStaticResources) return null;
+		try {
+			if (StringUtils.hasText(staticResourcesExtractDir)) {
+				return Files.createDirectories(Paths.get(staticResourcesExtractDir));
+			}
+			return Files.createTempDirectory("sbp-static-");
+		} catch (IOException e) {
+			throw new IllegalStateException("Create static resources extract directory failed", e);
+		}
+	}
+
+	public enum Activation {
+		EAGER, LAZY
+	}
 }
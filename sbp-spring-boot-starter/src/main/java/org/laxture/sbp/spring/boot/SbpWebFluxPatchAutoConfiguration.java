@@ -41,13 +41,19 @@ import org.springframework.web.server.WebFilter;
 @ConditionalOnProperty(prefix = SbpProperties.PREFIX, value = {"enabled"}, havingValue = "true")
 @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
 @AutoConfigureBefore({ WebFluxAutoConfiguration.class })
-@EnableConfigurationProperties({WebProperties.class, WebFluxProperties.class})
+@EnableConfigurationProperties({WebProperties.class, WebFluxProperties.class, SbpProperties.class})
 public class SbpWebFluxPatchAutoConfiguration {
 
 	@Bean
 	@ConditionalOnClass(WebFilter.class)
-	public WebFilter pluginLoadingLockServletFilter() {
-		return new PluginLoadingLockServletFilter();
+	public WebFilter pluginLoadingLockServletFilter(SbpProperties properties) {
+		return new PluginLoadingLockServletFilter(properties.getLoadingWaitTimeout());
+	}
+
+	@Bean
+	@ConditionalOnClass(WebFilter.class)
+	public WebFilter pluginActivationFilter(SbpProperties properties) {
+		return new PluginActivationFilter(properties.getLoadingWaitTimeout());
 	}
 
 	@Bean
@@ -62,7 +68,9 @@ public class SbpWebFluxPatchAutoConfiguration {
 	}
 
 	@Bean
-	public PluginWebFluxResourceHandlerRegistrationCustomizer resourceHandlerRegistrationCustomizer() {
-		return new PluginWebFluxResourceHandlerRegistrationCustomizer();
+	public PluginWebFluxResourceHandlerRegistrationCustomizer resourceHandlerRegistrationCustomizer(SbpProperties properties) {
+		return new PluginWebFluxResourceHandlerRegistrationCustomizer(
+				properties.getResourceCacheSize(), properties.getResourceCacheTtl(),
+				properties.createStaticResourcesExtractDir(), properties.isCompressStaticResources());
 	}
 }
\ No newline at end of file
@@ -25,6 +25,7 @@ import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.boot.autoconfigure.web.WebProperties;
 import org.springframework.boot.autoconfigure.web.reactive.WebFluxRegistrations;
+import org.springframework.boot.autoconfigure.web.servlet.PluginActivationFilter;
 import org.springframework.boot.autoconfigure.web.servlet.PluginLoadingLockServletFilter;
 import org.springframework.boot.autoconfigure.web.servlet.PluginResourceHandlerRegistrationCustomizer;
 import org.springframework.boot.autoconfigure.web.servlet.WebMvcRegistrations;
@@ -45,7 +46,7 @@ import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandl
 @ConditionalOnClass({ PluginManager.class, SpringBootPluginManager.class })
 @ConditionalOnProperty(prefix = SbpProperties.PREFIX, value = "enabled", havingValue = "true")
 @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
-@EnableConfigurationProperties(WebProperties.class)
+@EnableConfigurationProperties({WebProperties.class, SbpProperties.class})
 public class SbpWebMvcPatchAutoConfiguration {
 
 	@Bean
@@ -71,8 +72,14 @@ public class SbpWebMvcPatchAutoConfiguration {
 
 	@Bean
 	@ConditionalOnClass(Filter.class)
-	public Filter pluginLoadingLockServletFilter() {
-		return new PluginLoadingLockServletFilter();
+	public Filter pluginLoadingLockServletFilter(SbpProperties properties) {
+		return new PluginLoadingLockServletFilter(properties.getLoadingWaitTimeout());
+	}
+
+	@Bean
+	@ConditionalOnClass(Filter.class)
+	public Filter pluginActivationFilter(SbpProperties properties) {
+		return new PluginActivationFilter(properties.getLoadingWaitTimeout());
 	}
 
 	@Bean
@@ -87,7 +94,9 @@ public class SbpWebMvcPatchAutoConfiguration {
 	}
 
 	@Bean @Primary
-	public PluginResourceHandlerRegistrationCustomizer resourceHandlerRegistrationCustomizer() {
-		return new PluginResourceHandlerRegistrationCustomizer();
+	public PluginResourceHandlerRegistrationCustomizer resourceHandlerRegistrationCustomizer(SbpProperties properties) {
+		return new PluginResourceHandlerRegistrationCustomizer(
+				properties.getResourceCacheSize(), properties.getResourceCacheTtl(),
+				properties.createStaticResourcesExtractDir(), properties.isCompressStaticResources());
 	}
 }
\ No newline at end of file
@@ -48,6 +48,12 @@ public class PluginInfo implements PluginDescriptor {
 
     public PluginState pluginState;
 
+    /**
+     * Plugin is stopped by hibernation, and will be started on next request or
+     * extension lookup.
+     */
+    public boolean hibernated;
+
     public String newVersion;
 
     public boolean removed;
@@ -59,6 +65,15 @@ public class PluginInfo implements PluginDescriptor {
                                    String newVersion,
                                    PluginStartingError startingError,
                                    boolean removed) {
+        return build(descriptor, pluginState, false, newVersion, startingError, removed);
+    }
+
+    public static PluginInfo build(PluginDescriptor descriptor,
+                                   PluginState pluginState,
+                                   boolean hibernated,
+                                   String newVersion,
+                                   PluginStartingError startingError,
+                                   boolean removed) {
         PluginInfo pluginInfo = new PluginInfo();
         pluginInfo.pluginId = descriptor.getPluginId();
         pluginInfo.pluginDescription = descriptor.getPluginDescription();
@@ -71,6 +86,7 @@ public class PluginInfo implements PluginDescriptor {
             pluginInfo.dependencies = new ArrayList<>(descriptor.getDependencies());
         }
         pluginInfo.pluginState = pluginState;
+        pluginInfo.hibernated = hibernated;
         pluginInfo.startingError = startingError;
         pluginInfo.newVersion = newVersion;
         pluginInfo.removed = removed;